@@ -11,8 +11,9 @@ public final class AStar {
 
 	/**
 	 * Runs a star search with euclidean distance as heuristics function. Only
-	 * points that are valid in the given surrounding and that have at least
-	 * minDistance to any wall or obstacle are considered.
+	 * points that are valid in the given surrounding and that have more than
+	 * minDistance to any wall or obstacle are considered (see
+	 * ClearanceMap.java).
 	 * 
 	 * @param surrounding
 	 * @param minDistance
@@ -23,11 +24,14 @@ public final class AStar {
 		BytePoint start = surrounding.getStart();
 		BytePoint goal = surrounding.getGoal();
 
+		// Built only once per surrounding and minDistance
+		ClearanceMap clearance = surrounding.getClearanceMap(minDistance);
+
 		BooleanMap closedSet = surrounding.toBooleanMap();
-		BooleanMap openSet = surrounding.toBooleanMap();
-		// Set nothing but start as open
-		openSet.setAll(false);
-		openSet.set(start.getX(), start.getY(), true);
+		// The open set is prioritised by f score, so the minimum does not have
+		// to be searched in the whole map for every expansion.
+		BucketQueue openSet = new BucketQueue(closedSet.getWidth()
+				* closedSet.getHeight());
 
 		// This is done to save up space. Instead of having a Point[][] array,
 		// that tells you from where each point was reached, the same
@@ -40,12 +44,11 @@ public final class AStar {
 		cameFromX.setAll(Byte.MIN_VALUE);
 		cameFromY.setAll(Byte.MIN_VALUE);
 
+		// F scores are only needed to order the open set, so they are kept in
+		// there and not in a separate ByteMap.
 		ByteMap gScores = new ByteMap(closedSet.getWidth(),
 				closedSet.getHeight());
-		ByteMap fScores = new ByteMap(closedSet.getWidth(),
-				closedSet.getHeight());
 		gScores.setAll(Byte.MIN_VALUE);
-		fScores.setAll(Byte.MIN_VALUE);
 
 		// Start has gScore 0
 		// TODO: This is all not very safe, since there might be overflows that
@@ -57,66 +60,61 @@ public final class AStar {
 		// could be overflows in gScore if a distance is greater than 128 for
 		// instance on a map of size 128x20
 		gScores.set(start.getX(), start.getY(), (byte) 0);
-		fScores.set(
-				start.getX(),
-				start.getY(),
-				(byte) (Geometry.euclideanDist(start, goal).byteValue() - Byte.MIN_VALUE));
-
-		while (!openSet.all(false)) {
-			BytePoint current = findMinimum(openSet, fScores);
-			if (current == null) {
-				break;
-			} else if (current.equals(goal)) {
+		openSet.add(
+				index(closedSet, start.getX(), start.getY()),
+				priority((byte) (Geometry.euclideanDist(start, goal)
+						.byteValue() - Byte.MIN_VALUE)));
+
+		// Cells are walked by their index, coordinates are only needed for
+		// the clearance map and the heuristics function
+		int height = gScores.getHeight();
+		int[] neighborOffsets = gScores.getNeighborOffsets();
+		int goalIndex = gScores.index(goal.getX(), goal.getY());
+		while (!openSet.isEmpty()) {
+			int current = openSet.removeMinimum();
+			if (current == goalIndex) {
 				return reconstructPath(cameFromX, cameFromY, goal);
 			}
+			int currentX = current / height;
+			int currentY = current % height;
+
+			closedSet.set((byte) currentX, (byte) currentY, true);
+			byte currentGScore = gScores.get(current);
+
+			for (int i = 0; i < ByteMap.NEIGHBOR_COUNT; i++) {
+				byte neighborX = (byte) (currentX + ByteMap.NEIGHBOR_X[i]);
+				byte neighborY = (byte) (currentY + ByteMap.NEIGHBOR_Y[i]);
+				// Check if neighbor is applicable
+				if (!clearance.isPassable(neighborX, neighborY)
+						|| closedSet.get(neighborX, neighborY)) {
+					continue;
+				}
 
-			openSet.set(current.getX(), current.getY(), false);
-			closedSet.set(current.getX(), current.getY(), true);
-
-			for (byte neighborX = (byte) (current.getX() - 1); neighborX <= current
-					.getX() + 1; neighborX++) {
-				for (byte neighborY = (byte) (current.getY() - 1); neighborY <= current
-						.getY() + 1; neighborY++) {
-					// Check if neighbor is applicable
-					if ((neighborX != current.getX() || neighborY != current
-							.getY())
-							&& surrounding.isIn(neighborX, neighborY)
-							&& surrounding.distanceToNonPassableArea(neighborX,
-									neighborY) > minDistance
-							&& !closedSet.get(neighborX, neighborY)) {
-
-						// Diagonal moves have cost 2
-						byte tentativeGScore = (byte) (gScores.get(
-								current.getX(), current.getY()) + (current
-								.getX() != neighborX
-								&& current.getY() != neighborY ? 2 : 1));
-
-						// If neighbor is not already in openSet or has a better
-						// gScore offset
-						if (!openSet.get(neighborX, neighborY)
-								|| tentativeGScore < gScores.get(neighborX,
-										neighborY)) {
-
-							// Set came from
-							cameFromX.set(neighborX, neighborY,
-									(byte) current.getX());
-							cameFromY.set(neighborX, neighborY,
-									(byte) current.getY());
-
-							// Set new gScore and fScore
-							gScores.set(neighborX, neighborY, tentativeGScore);
-							fScores.set(
-									neighborX,
-									neighborY,
-									(byte) (tentativeGScore
-											+ Geometry.euclideanDist(goal,
-													neighborX, neighborY) - Byte.MIN_VALUE));
-
-							// Add neighbor to openSet (if it was already there,
-							// nothing is changed)
-							openSet.set(neighborX, neighborY, true);
-						}
-					}
+				// Diagonal moves have cost 2, cells close to walls might have
+				// an additional penalty
+				byte tentativeGScore = (byte) (currentGScore
+						+ (ByteMap.NEIGHBOR_X[i] != 0
+								&& ByteMap.NEIGHBOR_Y[i] != 0 ? 2 : 1) + clearance
+							.getPenalty(neighborX, neighborY));
+
+				// If neighbor is not already in openSet or has a better
+				// gScore offset
+				int neighbor = current + neighborOffsets[i];
+				if (!openSet.contains(neighbor)
+						|| tentativeGScore < gScores.get(neighbor)) {
+
+					// Set came from
+					cameFromX.set(neighbor, (byte) currentX);
+					cameFromY.set(neighbor, (byte) currentY);
+
+					// Set new gScore and fScore
+					gScores.set(neighbor, tentativeGScore);
+					byte fScore = (byte) (tentativeGScore
+							+ Geometry.euclideanDist(goal, neighborX, neighborY) - Byte.MIN_VALUE);
+
+					// Add neighbor to openSet (if it was already there, only
+					// its priority is updated)
+					openSet.add(neighbor, priority(fScore));
 				}
 			}
 		}
@@ -124,17 +122,19 @@ public final class AStar {
 		return null;
 	}
 
-	private static BytePoint findMinimum(BooleanMap openSet, ByteMap fScores) {
-		byte min = Byte.MAX_VALUE;
-		BytePoint minPoint = null;
-		for (BytePoint p : openSet.getAll(true)) {
-			if (fScores.get(p.getX(), p.getY()) > Byte.MIN_VALUE
-					&& fScores.get(p.getX(), p.getY()) < min) {
-				min = fScores.get(p.getX(), p.getY());
-				minPoint = p;
-			}
-		}
-		return minPoint;
+	/**
+	 * Index of the cell (x,y) in the open set
+	 */
+	private static int index(BooleanMap map, byte x, byte y) {
+		return x * map.getHeight() + y;
+	}
+
+	/**
+	 * Converts a "simulated unsigned" f score into a priority of the open set
+	 * (0 - 255).
+	 */
+	private static int priority(byte fScore) {
+		return fScore - Byte.MIN_VALUE;
 	}
 
 	private static List<BytePoint> reconstructPath(ByteMap cameFromX,
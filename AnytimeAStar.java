@@ -0,0 +1,325 @@
+import java.util.List;
+
+/**
+ * Anytime repairing A* (ARA*, Likhachev, Gordon, Thrun). Runs weighted A*
+ * with an inflated heuristics function, which finds a (suboptimal) path much
+ * faster than A*. As long as there is time left, the inflation is decreased
+ * and the path is improved, reusing the work of the previous searches. This
+ * way planning returns soon after a given time budget, but still ends up with
+ * the optimal path if there is enough time. The first (inflated) search is
+ * always finished, so there is a path whenever one exists, even if that
+ * takes longer than the budget.
+ *
+ * Costs are the same as in AStar.java (1 for straight, 2 for diagonal moves).
+ *
+ * @author Johannes
+ *
+ */
+public class AnytimeAStar {
+
+	/**
+	 * Inflation of the heuristics function for the first search
+	 */
+	static final double INITIAL_EPSILON = 3.;
+
+	/**
+	 * Inflation is decreased by this after every search
+	 */
+	static final double EPSILON_STEP = 0.5;
+
+	/**
+	 * The time is only checked every this many expansions
+	 */
+	static final int EXPANSIONS_PER_TIME_CHECK = 32;
+
+	static final float INFINITY = Float.POSITIVE_INFINITY;
+	static final int NO_CELL = -1;
+
+	PassableGrid grid;
+
+	/**
+	 * See WideAStar.penalties
+	 */
+	ClearanceMap penalties;
+
+	int height;
+	int startCell;
+	int goalCell;
+	int goalX;
+	int goalY;
+
+	float[] gScores;
+	int[] cameFrom;
+	IndexedHeap openSet;
+
+	/**
+	 * Search in which a cell was last closed. Closed cells whose g score
+	 * improves are not reopened but remembered as inconsistent for the next
+	 * search.
+	 */
+	int[] closed;
+	int search;
+
+	/**
+	 * Cells that became inconsistent while they were closed
+	 */
+	boolean[] inconsistent;
+	int[] inconsistentCells;
+	int inconsistentCount;
+
+	/**
+	 * Current inflation of the heuristics function
+	 */
+	double epsilon;
+
+	/**
+	 * Best path found so far
+	 */
+	int[] path;
+
+	/**
+	 * The cost of path is at most this times the optimal cost
+	 */
+	double suboptimality;
+
+	/**
+	 * Plans on the clearance map of the surrounding for the given minDistance
+	 * and returns the best path found within the time budget.
+	 *
+	 * @param surrounding
+	 * @param minDistance
+	 * @param budgetMillis
+	 *            Only limits the improvement of the first path
+	 * @return Path or null, if there is no path
+	 */
+	public static List<BytePoint> compute(Surrounding surrounding,
+			int minDistance, long budgetMillis) {
+		return plan(surrounding, minDistance, budgetMillis).getBytePoints();
+	}
+
+	/**
+	 * Like compute, but returns the planner, e.g. to check whether the path
+	 * is optimal (see getSuboptimality).
+	 *
+	 * @param surrounding
+	 * @param minDistance
+	 * @param budgetMillis
+	 *            Only limits the improvement of the first path
+	 * @return
+	 */
+	public static AnytimeAStar plan(Surrounding surrounding, int minDistance,
+			long budgetMillis) {
+		long deadline = System.currentTimeMillis() + budgetMillis;
+		ClearanceMap clearance = surrounding.getClearanceMap(minDistance);
+		BytePoint start = surrounding.getStart();
+		BytePoint goal = surrounding.getGoal();
+		AnytimeAStar planner = new AnytimeAStar(clearance, start.getX(),
+				start.getY(), goal.getX(), goal.getY());
+		planner.improve(deadline);
+		return planner;
+	}
+
+	/**
+	 * Prepares the search. Nothing is searched until improve is called.
+	 *
+	 * @param grid
+	 * @param startX
+	 * @param startY
+	 * @param goalX
+	 * @param goalY
+	 */
+	public AnytimeAStar(PassableGrid grid, int startX, int startY, int goalX,
+			int goalY) {
+		this.grid = grid;
+		this.penalties = WideAStar.penalties(grid);
+		this.height = grid.getHeight();
+		int cells = grid.getWidth() * height;
+		this.startCell = startX * height + startY;
+		this.goalCell = goalX * height + goalY;
+		this.goalX = goalX;
+		this.goalY = goalY;
+		this.gScores = new float[cells];
+		this.cameFrom = new int[cells];
+		this.closed = new int[cells];
+		this.inconsistent = new boolean[cells];
+		this.inconsistentCells = new int[16];
+		this.openSet = new IndexedHeap(cells);
+		for (int i = 0; i < cells; i++) {
+			gScores[i] = INFINITY;
+			cameFrom[i] = NO_CELL;
+		}
+		this.epsilon = INITIAL_EPSILON;
+		this.suboptimality = Double.POSITIVE_INFINITY;
+		gScores[startCell] = 0;
+		openSet.add(startCell, key(startCell));
+	}
+
+	/**
+	 * Searches and improves the path until it is optimal or the deadline is
+	 * reached. If there is no path yet, the current search is finished first,
+	 * no matter the deadline.
+	 *
+	 * @param deadlineMillis
+	 *            As System.currentTimeMillis()
+	 * @return true if the path is optimal (or there is no path at all)
+	 */
+	public boolean improve(long deadlineMillis) {
+		while (true) {
+			if (!improvePath(deadlineMillis)) {
+				return false;
+			}
+			if (gScores[goalCell] == INFINITY && openSet.isEmpty()) {
+				// There is no path
+				return true;
+			}
+			path = reconstructPath();
+			suboptimality = Math.min(epsilon, gScores[goalCell]
+					/ minimumUnweightedF());
+			if (suboptimality <= 1.) {
+				return true;
+			}
+
+			// Next search with less inflation. Inconsistent cells are
+			// reopened, all keys change and nothing is closed anymore.
+			epsilon = Math.max(1., epsilon - EPSILON_STEP);
+			int[] cells = new int[openSet.size() + inconsistentCount];
+			int count = 0;
+			for (int i = 0; i < openSet.size(); i++) {
+				cells[count++] = openSet.get(i);
+			}
+			for (int i = 0; i < inconsistentCount; i++) {
+				inconsistent[inconsistentCells[i]] = false;
+				cells[count++] = inconsistentCells[i];
+			}
+			inconsistentCount = 0;
+			openSet.clear();
+			for (int i = 0; i < count; i++) {
+				openSet.add(cells[i], key(cells[i]));
+			}
+			search++;
+		}
+	}
+
+	/**
+	 * Best path found so far.
+	 *
+	 * @return Cell indices (x * height + y) or null, if no path found yet
+	 */
+	public int[] getPath() {
+		return path;
+	}
+
+	/**
+	 * Best path found so far.
+	 *
+	 * @return Every cell of the path or null, if no path found yet
+	 */
+	public List<BytePoint> getBytePoints() {
+		return path == null ? null : WideAStar.toBytePoints(grid, path);
+	}
+
+	/**
+	 * Bound for the cost of getPath() relative to the optimal cost.
+	 *
+	 * @return 1 if the path is optimal, infinity if there is no path yet
+	 */
+	public double getSuboptimality() {
+		return suboptimality;
+	}
+
+	/**
+	 * Weighted A* that reuses everything from the previous searches. Stops as
+	 * soon as no cell in the open set can improve the path to the goal.
+	 *
+	 * @return false if the deadline was reached first (only checked once a
+	 *         path was found)
+	 */
+	private boolean improvePath(long deadlineMillis) {
+		int expansions = 0;
+		while (openSet.peekMinimumKey() < gScores[goalCell]) {
+			if (path != null
+					&& ++expansions % EXPANSIONS_PER_TIME_CHECK == 0
+					&& System.currentTimeMillis() >= deadlineMillis) {
+				return false;
+			}
+			int current = openSet.removeMinimum();
+			closed[current] = search + 1;
+			int currentX = current / height;
+			int currentY = current % height;
+			for (int neighborX = currentX - 1; neighborX <= currentX + 1; neighborX++) {
+				for (int neighborY = currentY - 1; neighborY <= currentY + 1; neighborY++) {
+					if (neighborX == currentX && neighborY == currentY
+							|| !grid.isPassable(neighborX, neighborY)) {
+						continue;
+					}
+					int neighbor = neighborX * height + neighborY;
+					// Diagonal moves have cost 2, cells close to walls might
+					// have an additional penalty
+					float tentativeGScore = gScores[current]
+							+ (neighborX != currentX && neighborY != currentY ? 2
+									: 1) + WideAStar.penalty(penalties, neighborX,
+									neighborY);
+					if (tentativeGScore < gScores[neighbor]) {
+						gScores[neighbor] = tentativeGScore;
+						cameFrom[neighbor] = current;
+						if (closed[neighbor] != search + 1) {
+							openSet.add(neighbor, key(neighbor));
+						} else if (!inconsistent[neighbor]) {
+							addInconsistent(neighbor);
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Smallest g + h of all cells that might still improve the path
+	 */
+	private double minimumUnweightedF() {
+		double min = gScores[goalCell];
+		for (int i = 0; i < openSet.size(); i++) {
+			int cell = openSet.get(i);
+			min = Math.min(min, gScores[cell] + heuristic(cell));
+		}
+		for (int i = 0; i < inconsistentCount; i++) {
+			int cell = inconsistentCells[i];
+			min = Math.min(min, gScores[cell] + heuristic(cell));
+		}
+		return min;
+	}
+
+	private void addInconsistent(int cell) {
+		if (inconsistentCount == inconsistentCells.length) {
+			int[] cells = new int[2 * inconsistentCount];
+			System.arraycopy(inconsistentCells, 0, cells, 0, inconsistentCount);
+			inconsistentCells = cells;
+		}
+		inconsistent[cell] = true;
+		inconsistentCells[inconsistentCount++] = cell;
+	}
+
+	private double key(int cell) {
+		return gScores[cell] + epsilon * heuristic(cell);
+	}
+
+	/**
+	 * Euclidean distance to the goal
+	 */
+	private double heuristic(int cell) {
+		return WideAStar.heuristic(cell / height, cell % height, goalX, goalY);
+	}
+
+	private int[] reconstructPath() {
+		int length = 0;
+		for (int cell = goalCell; cell != NO_CELL; cell = cameFrom[cell]) {
+			length++;
+		}
+		int[] result = new int[length];
+		for (int cell = goalCell; cell != NO_CELL; cell = cameFrom[cell]) {
+			result[--length] = cell;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,234 @@
+/**
+ * Casts the rays of both ultrasonic sensors for many poses at once, e.g. for
+ * all particles of the particle filter. Poses are given as arrays of x, y
+ * and heading instead of Car objects, and all intermediate values are kept in
+ * arrays with one entry per pose (structure of arrays), which are reused
+ * between calls. Unlike UltrasonicSensor.measureFront and measureBack no
+ * sensor lines are created.
+ *
+ * The results are the same as those of UltrasonicSensor.java. The rays of
+ * all poses are traced one sensor ray after the other by traceRays, which
+ * subclasses can replace with a faster implementation (see
+ * pc/VectorRayCaster.java).
+ *
+ * @author Johannes
+ *
+ */
+public class BatchRayCaster {
+
+	UltrasonicSensor sensor;
+	Surrounding surrounding;
+
+	/**
+	 * Angle of every ray relative to the heading in radians, the rays of the
+	 * front sensor first
+	 */
+	double[] rayOffsets;
+
+	/**
+	 * Mount point of the sensor of every ray relative to the car
+	 */
+	double[] mountX;
+	double[] mountY;
+
+	int frontRayCount;
+
+	/**
+	 * Per pose: start and direction (any length) of the current ray, where
+	 * to start searching (distance to the closest obstacle) and the result
+	 * of traceRays
+	 */
+	double[] originX;
+	double[] originY;
+	double[] directionX;
+	double[] directionY;
+	double[] start;
+	double[] distances;
+
+	/**
+	 * Result of castRays for measure
+	 */
+	int[] ranges;
+
+	/**
+	 * Creates a caster for the rays of the sensors of RobotKnowledge.java.
+	 *
+	 * @param sensor
+	 *            Casts the single rays (see traceRays)
+	 */
+	public BatchRayCaster(UltrasonicSensor sensor) {
+		this.sensor = sensor;
+		this.surrounding = sensor.getSurrounding();
+		int front = rayCount(RobotKnowledge.FRONT_SENSOR_SECTOR_DEGREES,
+				RobotKnowledge.FRONT_SENSOR_SECTOR_RESOLUTION);
+		int back = rayCount(RobotKnowledge.BACK_SENSOR_SECTOR_DEGREES,
+				RobotKnowledge.BACK_SENSOR_SECTOR_RESOLUTION);
+		frontRayCount = front;
+		rayOffsets = new double[front + back];
+		mountX = new double[front + back];
+		mountY = new double[front + back];
+		addRays(0, RobotKnowledge.FRONT_SENSOR_SECTOR_DEGREES,
+				RobotKnowledge.FRONT_SENSOR_SECTOR_RESOLUTION,
+				RobotKnowledge.FRONT_SENSOR_MOUNT_OFFSET);
+		addRays(front, RobotKnowledge.BACK_SENSOR_SECTOR_DEGREES,
+				RobotKnowledge.BACK_SENSOR_SECTOR_RESOLUTION,
+				RobotKnowledge.BACK_SENSOR_MOUNT_OFFSET);
+	}
+
+	/**
+	 * Calculates what every ray of both sensors measures for every pose.
+	 *
+	 * @param x
+	 *            x of every pose
+	 * @param y
+	 *            y of every pose
+	 * @param theta
+	 *            Heading of every pose in radians
+	 * @param count
+	 *            Number of poses
+	 * @param ranges
+	 *            Filled with the measure in cm of ray r for pose i at r *
+	 *            count + i, rays 0 to getFrontRayCount() - 1 belong to the
+	 *            front sensor. Needs getRayCount() * count entries.
+	 */
+	public void castRays(double[] x, double[] y, double[] theta, int count,
+			int[] ranges) {
+		if (x.length < count || y.length < count || theta.length < count
+				|| ranges.length < count * getRayCount()) {
+			throw new IllegalArgumentException("Arrays are too short");
+		}
+		ensureCapacity(count);
+		for (int i = 0; i < count; i++) {
+			start[i] = surrounding.distanceToNonPassableArea((byte) x[i],
+					(byte) y[i]);
+		}
+		double max = RobotKnowledge.getMaxMeasure();
+		for (int ray = 0; ray < rayOffsets.length; ray++) {
+			double offset = rayOffsets[ray];
+			double mx = mountX[ray];
+			double my = mountY[ray];
+			// The same as RobotKnowledge.getFrontSensorLines
+			for (int i = 0; i < count; i++) {
+				double angle = theta[i] + offset;
+				double cos = Math.cos(angle);
+				double sin = Math.sin(angle);
+				originX[i] = mx * cos + my * sin + x[i];
+				originY[i] = -mx * sin + my * cos + y[i];
+				directionX[i] = originX[i] - x[i];
+				directionY[i] = originY[i] - y[i];
+			}
+			traceRays(count);
+			boolean front = ray < frontRayCount;
+			for (int i = 0; i < count; i++) {
+				// Nothing recognized is the maximum (see UltrasonicSensor.sense)
+				double distance = Math.min(distances[i], max);
+				ranges[ray * count + i] = front ? RobotKnowledge
+						.getMeasureFront(distance) : RobotKnowledge
+						.getMeasureBack(distance);
+			}
+		}
+	}
+
+	/**
+	 * Calculates what both sensors measure for every pose, the same as
+	 * UltrasonicSensor.measureFront and measureBack.
+	 *
+	 * @param x
+	 *            x of every pose
+	 * @param y
+	 *            y of every pose
+	 * @param theta
+	 *            Heading of every pose in radians
+	 * @param count
+	 *            Number of poses
+	 * @param front
+	 *            Filled with the measure of the front sensor in cm
+	 * @param back
+	 *            Filled with the measure of the back sensor in cm
+	 */
+	public void measure(double[] x, double[] y, double[] theta, int count,
+			int[] front, int[] back) {
+		if (front.length < count || back.length < count) {
+			throw new IllegalArgumentException("Arrays are too short");
+		}
+		ensureCapacity(count);
+		castRays(x, y, theta, count, ranges);
+		for (int i = 0; i < count; i++) {
+			int minFront = Integer.MAX_VALUE;
+			int minBack = Integer.MAX_VALUE;
+			for (int ray = 0; ray < rayOffsets.length; ray++) {
+				int range = ranges[ray * count + i];
+				if (ray < frontRayCount) {
+					minFront = Math.min(minFront, range);
+				} else {
+					minBack = Math.min(minBack, range);
+				}
+			}
+			front[i] = minFront;
+			back[i] = minBack;
+		}
+	}
+
+	public int getRayCount() {
+		return rayOffsets.length;
+	}
+
+	public int getFrontRayCount() {
+		return frontRayCount;
+	}
+
+	public UltrasonicSensor getSensor() {
+		return sensor;
+	}
+
+	/**
+	 * Fills distances with the distance from the origin to the first wall or
+	 * obstacle along the direction for the first count poses, searching from
+	 * start.
+	 *
+	 * @param count
+	 */
+	protected void traceRays(int count) {
+		for (int i = 0; i < count; i++) {
+			distances[i] = sensor.castRay(originX[i], originY[i],
+					directionX[i], directionY[i], start[i]);
+		}
+	}
+
+	/**
+	 * Grows the arrays per pose to at least count entries.
+	 *
+	 * @param count
+	 */
+	protected void ensureCapacity(int count) {
+		if (originX != null && originX.length >= count) {
+			return;
+		}
+		originX = new double[count];
+		originY = new double[count];
+		directionX = new double[count];
+		directionY = new double[count];
+		start = new double[count];
+		distances = new double[count];
+		ranges = new int[count * getRayCount()];
+	}
+
+	private void addRays(int first, int sectorDegrees, int resolution,
+			DoublePoint mountOffset) {
+		int ray = first;
+		for (int thetaOffset = -sectorDegrees / 2; thetaOffset <= sectorDegrees / 2; thetaOffset += resolution) {
+			rayOffsets[ray] = Math.toRadians(thetaOffset);
+			mountX[ray] = mountOffset.getX();
+			mountY[ray] = mountOffset.getY();
+			ray++;
+		}
+	}
+
+	private static int rayCount(int sectorDegrees, int resolution) {
+		int count = 0;
+		for (int thetaOffset = -sectorDegrees / 2; thetaOffset <= sectorDegrees / 2; thetaOffset += resolution) {
+			count++;
+		}
+		return count;
+	}
+}
@@ -5,13 +5,22 @@ import java.util.List;
  * Wrapper for a two dimensional boolean array. Please note, that BooleanMap and
  * ByteMap do not use generics because this would force you to use boxed types
  * which require more space than their primitive equivalents.
- * 
+ *
+ * The values are packed into the bits of a long array (cell x * height + y is
+ * bit (x * height + y) % 64 of word (x * height + y) / 64). This needs an
+ * eighth of the memory of a boolean[][] and allows bulk operations to work on
+ * 64 cells at once.
+ *
  * @author Johannes
- * 
+ *
  */
 public class BooleanMap {
 
-	boolean[][] map;
+	static final int WORD_BITS = 64;
+	static final int WORD_SHIFT = 6;
+	static final long ALL_BITS = -1L;
+
+	long[] words;
 	byte width;
 	byte height;
 
@@ -19,31 +28,67 @@ public class BooleanMap {
 		super();
 		this.width = width;
 		this.height = height;
-		this.map = new boolean[width][height];
+		this.words = new long[(width * height + WORD_BITS - 1) >> WORD_SHIFT];
 	}
 
 	public BooleanMap(BooleanMap other) {
 		super();
 		this.width = other.width;
 		this.height = other.height;
-		this.map = new boolean[width][height];
-		for (byte x = 0; x < map.length; x++) {
-			for (byte y = 0; y < map[x].length; y++) {
-				map[x][y] = other.map[x][y];
-			}
-		}
+		this.words = new long[other.words.length];
+		System.arraycopy(other.words, 0, words, 0, words.length);
 	}
 
 	public void set(byte x, byte y, boolean b) {
 		if (isValid(x, y)) {
-			map[x][y] = b;
+			int index = x * height + y;
+			if (b) {
+				words[index >> WORD_SHIFT] |= 1L << index;
+			} else {
+				words[index >> WORD_SHIFT] &= ~(1L << index);
+			}
 		}
 	}
 
 	/**
-	 * Checks if (x,y) is a valid index of this map
+	 * Sets the cells (x,yFrom) to (x,yTo) to b. As the cells of a column are
+	 * consecutive bits, this sets up to 64 cells at once. Cells outside the
+	 * map are ignored.
 	 * 
 	 * @param x
+	 * @param yFrom
+	 * @param yTo
+	 *            Inclusive
+	 * @param b
+	 */
+	public void setSpan(byte x, int yFrom, int yTo, boolean b) {
+		yFrom = Math.max(yFrom, 0);
+		yTo = Math.min(yTo, height - 1);
+		if (x < 0 || x >= width || yFrom > yTo) {
+			return;
+		}
+		int from = x * height + yFrom;
+		int to = x * height + yTo;
+		for (int i = from >> WORD_SHIFT; i <= to >> WORD_SHIFT; i++) {
+			long mask = ALL_BITS;
+			if (i == from >> WORD_SHIFT) {
+				mask &= ALL_BITS << from;
+			}
+			if (i == to >> WORD_SHIFT) {
+				mask &= ALL_BITS >>> (WORD_BITS - 1 - (to & WORD_BITS - 1));
+			}
+			if (b) {
+				words[i] |= mask;
+			} else {
+				words[i] &= ~mask;
+			}
+		}
+	}
+
+	/**
+	 * Checks if (x,y) is a valid index of this map
+	 *
+	 * @param x
 	 * @param y
 	 * @return
 	 */
@@ -51,65 +96,134 @@ public class BooleanMap {
 		return !(x < 0 || y < 0 || x >= width || y >= height);
 	}
 
+	/**
+	 * Gets the value of (x,y).
+	 *
+	 * @param x
+	 * @param y
+	 * @return
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             If (x,y) is not valid, like the boolean[][] this map used to
+	 *             be. Without the check, invalid cells would silently read
+	 *             the bits of a neighboring column.
+	 */
 	public boolean get(byte x, byte y) {
-		return map[x][y];
+		if (!isValid(x, y)) {
+			throw new ArrayIndexOutOfBoundsException("(" + x + "," + y
+					+ ") is outside the map");
+		}
+		int index = x * height + y;
+		return (words[index >> WORD_SHIFT] & 1L << index) != 0;
 	}
 
 	/**
 	 * Sets all values that are false to true and all that are true to false.
 	 */
 	public void invert() {
-		for (byte x = 0; x < map.length; x++) {
-			for (byte y = 0; y < map[x].length; y++) {
-				map[x][y] = !map[x][y];
-			}
+		for (int i = 0; i < words.length; i++) {
+			words[i] = ~words[i];
 		}
+		clearUnusedBits();
 	}
 
 	/**
 	 * Checks if all values in the map are equal to b
-	 * 
+	 *
 	 * @param b
 	 * @return
 	 */
 	public boolean all(boolean b) {
-		for (byte x = 0; x < map.length; x++) {
-			for (byte y = 0; y < map[x].length; y++) {
-				if (map[x][y] != b) {
-					return false;
-				}
+		if (words.length == 0) {
+			return true;
+		}
+		long expected = b ? ALL_BITS : 0;
+		int last = words.length - 1;
+		for (int i = 0; i < last; i++) {
+			if (words[i] != expected) {
+				return false;
 			}
 		}
-		return true;
+		return words[last] == (expected & lastWordMask());
 	}
 
 	/**
 	 * Sets all values to b.
-	 * 
+	 *
 	 * @param b
 	 */
 	public void setAll(boolean b) {
-		for (byte x = 0; x < map.length; x++) {
-			for (byte y = 0; y < map[x].length; y++) {
-				map[x][y] = b;
-			}
+		long value = b ? ALL_BITS : 0;
+		for (int i = 0; i < words.length; i++) {
+			words[i] = value;
 		}
+		clearUnusedBits();
+	}
+
+	/**
+	 * Sets all values that are true in other to true as well.
+	 *
+	 * @param other
+	 *            Must have the same size
+	 */
+	public void or(BooleanMap other) {
+		if (other.width != width || other.height != height) {
+			throw new IllegalArgumentException("other has a different size");
+		}
+		for (int i = 0; i < words.length; i++) {
+			words[i] |= other.words[i];
+		}
+	}
+
+	/**
+	 * Counts the values that are true.
+	 *
+	 * @return
+	 */
+	public int count() {
+		int count = 0;
+		for (int i = 0; i < words.length; i++) {
+			count += Long.bitCount(words[i]);
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the next value that is true, starting at index. Iterate all true
+	 * values with
+	 *
+	 * for (int i = map.nextSetIndex(0); i >= 0; i = map.nextSetIndex(i + 1))
+	 *
+	 * which does not allocate anything, unlike getAll.
+	 *
+	 * @param index
+	 *            x * height + y
+	 * @return x * height + y of the next true value or -1, if there is none
+	 */
+	public int nextSetIndex(int index) {
+		return nextIndex(index, false);
+	}
+
+	/**
+	 * Finds the next value that is false, starting at index.
+	 *
+	 * @param index
+	 *            x * height + y
+	 * @return x * height + y of the next false value or -1, if there is none
+	 */
+	public int nextClearIndex(int index) {
+		return nextIndex(index, true);
 	}
 
 	/**
 	 * Returns all indices that have value b.
-	 * 
+	 *
 	 * @param b
 	 * @return
 	 */
 	public List<BytePoint> getAll(boolean b) {
 		List<BytePoint> result = new LinkedList<BytePoint>();
-		for (byte x = 0; x < map.length; x++) {
-			for (byte y = 0; y < map[x].length; y++) {
-				if (map[x][y] == b) {
-					result.add(new BytePoint(x, y));
-				}
-			}
+		for (int i = nextIndex(0, !b); i >= 0; i = nextIndex(i + 1, !b)) {
+			result.add(new BytePoint((byte) (i / height), (byte) (i % height)));
 		}
 		return result;
 	}
@@ -133,13 +247,52 @@ public class BooleanMap {
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
-		for (int x = 0; x < map.length; x++) {
-			for (int y = 0; y < map[x].length; y++) {
-				builder.append(map[x][y] ? "X" : ".");
+		for (byte x = 0; x < width; x++) {
+			for (byte y = 0; y < height; y++) {
+				builder.append(get(x, y) ? "X" : ".");
 			}
 			builder.append("\n");
 		}
 		return builder.toString();
 	}
 
+	/**
+	 * Finds the next set bit of the words (or of the inverted words) with
+	 * numberOfTrailingZeros, so 64 cells are skipped at once.
+	 */
+	private int nextIndex(int index, boolean inverted) {
+		int size = width * height;
+		if (index < 0 || index >= size) {
+			return -1;
+		}
+		int i = index >> WORD_SHIFT;
+		long word = (inverted ? ~words[i] : words[i]) & ALL_BITS << index;
+		while (word == 0) {
+			if (++i == words.length) {
+				return -1;
+			}
+			word = inverted ? ~words[i] : words[i];
+		}
+		int result = (i << WORD_SHIFT) + Long.numberOfTrailingZeros(word);
+		// Unused bits of the last word are false, but not cells
+		return result < size ? result : -1;
+	}
+
+	/**
+	 * Bits of the last word that belong to cells
+	 */
+	private long lastWordMask() {
+		int used = width * height & WORD_BITS - 1;
+		return used == 0 ? ALL_BITS : ~(ALL_BITS << used);
+	}
+
+	/**
+	 * Keeps the bits after the last cell false, so whole words can be compared
+	 * and counted.
+	 */
+	private void clearUnusedBits() {
+		if (words.length > 0) {
+			words[words.length - 1] &= lastWordMask();
+		}
+	}
 }
@@ -0,0 +1,189 @@
+/**
+ * Priority queue for the open set of the graph searches. Priorities are
+ * unsigned bytes (0 - 255), which is what the "simulated unsigned" f scores of
+ * AStar.java are. Every priority has its own bucket, that is a doubly linked
+ * list of cell indices. This allows adding, changing the priority of (decrease
+ * key) and removing a cell in constant time, while finding the minimum only
+ * has to look at the buckets and not at every cell of the map.
+ *
+ * The links are stored in short arrays instead of node objects to save space.
+ * This is fine since the area of a map is limited by the byte coordinates
+ * anyway (see Surrounding.java).
+ *
+ * @author Johannes
+ *
+ */
+public class BucketQueue {
+
+	/**
+	 * Number of different priorities
+	 */
+	static final int BUCKETS = 256;
+
+	/**
+	 * Marks the end of a bucket list
+	 */
+	static final short NONE = -1;
+
+	/**
+	 * Marks a cell that is currently not in the queue
+	 */
+	static final short NOT_QUEUED = -2;
+
+	/**
+	 * First cell of every bucket
+	 */
+	short[] heads;
+
+	/**
+	 * Next cell in the same bucket
+	 */
+	short[] next;
+
+	/**
+	 * Previous cell in the same bucket or NOT_QUEUED
+	 */
+	short[] previous;
+
+	/**
+	 * The bucket every queued cell is in
+	 */
+	byte[] priorities;
+
+	/**
+	 * No bucket below this one contains any cells
+	 */
+	int lowest;
+
+	/**
+	 * Number of queued cells
+	 */
+	int size;
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity
+	 *            Cells are indexed from 0 to capacity - 1
+	 */
+	public BucketQueue(int capacity) {
+		if (capacity > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("capacity must not exceed "
+					+ Short.MAX_VALUE);
+		}
+		heads = new short[BUCKETS];
+		next = new short[capacity];
+		previous = new short[capacity];
+		priorities = new byte[capacity];
+		clear();
+	}
+
+	/**
+	 * Removes all cells from the queue.
+	 */
+	public void clear() {
+		for (int i = 0; i < heads.length; i++) {
+			heads[i] = NONE;
+		}
+		for (int i = 0; i < previous.length; i++) {
+			previous[i] = NOT_QUEUED;
+		}
+		lowest = BUCKETS;
+		size = 0;
+	}
+
+	/**
+	 * Adds the cell with the given priority. If the cell is already queued its
+	 * priority is changed.
+	 *
+	 * @param cell
+	 * @param priority
+	 *            Between 0 and 255
+	 */
+	public void add(int cell, int priority) {
+		if (priority < 0 || priority >= BUCKETS) {
+			throw new IllegalArgumentException("priority must be between 0 and "
+					+ (BUCKETS - 1));
+		}
+		if (contains(cell)) {
+			unlink(cell);
+		}
+		short head = heads[priority];
+		next[cell] = head;
+		previous[cell] = NONE;
+		if (head != NONE) {
+			previous[head] = (short) cell;
+		}
+		heads[priority] = (short) cell;
+		priorities[cell] = (byte) priority;
+		if (priority < lowest) {
+			lowest = priority;
+		}
+		size++;
+	}
+
+	/**
+	 * Removes the cell with the smallest priority from the queue.
+	 *
+	 * @return Index of the removed cell or -1, if the queue is empty
+	 */
+	public int removeMinimum() {
+		if (size == 0) {
+			return NONE;
+		}
+		while (heads[lowest] == NONE) {
+			lowest++;
+		}
+		int cell = heads[lowest];
+		unlink(cell);
+		return cell;
+	}
+
+	/**
+	 * Removes the cell from the queue if it is queued.
+	 *
+	 * @param cell
+	 */
+	public void remove(int cell) {
+		if (contains(cell)) {
+			unlink(cell);
+		}
+	}
+
+	public boolean contains(int cell) {
+		return previous[cell] != NOT_QUEUED;
+	}
+
+	/**
+	 * Returns the priority of a queued cell.
+	 *
+	 * @param cell
+	 * @return
+	 */
+	public int getPriority(int cell) {
+		return priorities[cell] & 0xFF;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void unlink(int cell) {
+		short before = previous[cell];
+		short after = next[cell];
+		if (before == NONE) {
+			heads[priorities[cell] & 0xFF] = after;
+		} else {
+			next[before] = after;
+		}
+		if (after != NONE) {
+			previous[after] = before;
+		}
+		previous[cell] = NOT_QUEUED;
+		size--;
+	}
+}
@@ -12,35 +12,61 @@ import java.util.List;
  */
 public class ByteMap {
 
-	byte[][] map;
+	/**
+	 * Relative coordinates of the 8 neighbors of a cell, ordered by x and then
+	 * by y
+	 */
+	static final int[] NEIGHBOR_X = { -1, -1, -1, 0, 0, 1, 1, 1 };
+	static final int[] NEIGHBOR_Y = { -1, 0, 1, -1, 1, -1, 0, 1 };
+	static final int NEIGHBOR_COUNT = 8;
+
+	/**
+	 * Cell (x,y) is stored at x * height + y, so a whole map is one block of
+	 * memory that can be copied and filled with System.arraycopy.
+	 */
+	byte[] map;
 	int width;
 	int height;
 
+	/**
+	 * Difference of the index of a cell and the index of each neighbor (same
+	 * order as NEIGHBOR_X and NEIGHBOR_Y)
+	 */
+	int[] neighborOffsets;
+
 	public ByteMap(int width, int height) {
 		super();
 		this.width = width;
 		this.height = height;
-		this.map = new byte[width][height];
+		this.map = new byte[width * height];
 	}
 
 	public ByteMap(ByteMap other) {
 		super();
 		this.width = other.width;
 		this.height = other.height;
-		this.map = new byte[width][height];
-		for (int x = 0; x < map.length; x++) {
-			for (int y = 0; y < map[x].length; y++) {
-				map[x][y] = other.map[x][y];
-			}
-		}
+		this.map = new byte[other.map.length];
+		System.arraycopy(other.map, 0, map, 0, map.length);
 	}
 
 	public void set(int x, int y, byte b) {
 		if (isValid(x, y)) {
-			map[x][y] = b;
+			map[x * height + y] = b;
 		}
 	}
 
+	/**
+	 * Sets the value of a cell by its index. Unlike set(x, y, b) the index is
+	 * not checked.
+	 * 
+	 * @param index
+	 *            See index(x, y)
+	 * @param b
+	 */
+	public void set(int index, byte b) {
+		map[index] = b;
+	}
+
 	/**
 	 * Checks if (x,y) is a valid index of this map
 	 * 
@@ -53,7 +79,48 @@ public class ByteMap {
 	}
 
 	public byte get(int x, int y) {
-		return map[x][y];
+		return map[x * height + y];
+	}
+
+	/**
+	 * Returns the value of a cell by its index.
+	 * 
+	 * @param index
+	 *            See index(x, y)
+	 * @return
+	 */
+	public byte get(int index) {
+		return map[index];
+	}
+
+	/**
+	 * Index of the cell (x,y), which is x * height + y. Walking cells by index
+	 * saves the multiplication on every access.
+	 * 
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public int index(int x, int y) {
+		return x * height + y;
+	}
+
+	/**
+	 * Offsets from the index of a cell to the indices of its neighbors, in
+	 * the order of NEIGHBOR_X and NEIGHBOR_Y. For cells at the border the
+	 * offsets point to cells on the other side of the map, so check the
+	 * neighbor coordinates first.
+	 * 
+	 * @return
+	 */
+	public int[] getNeighborOffsets() {
+		if (neighborOffsets == null) {
+			neighborOffsets = new int[NEIGHBOR_COUNT];
+			for (int i = 0; i < NEIGHBOR_COUNT; i++) {
+				neighborOffsets[i] = NEIGHBOR_X[i] * height + NEIGHBOR_Y[i];
+			}
+		}
+		return neighborOffsets;
 	}
 
 	/**
@@ -63,11 +130,9 @@ public class ByteMap {
 	 * @return
 	 */
 	public boolean all(byte b) {
-		for (int x = 0; x < map.length; x++) {
-			for (int y = 0; y < map[x].length; y++) {
-				if (map[x][y] != b) {
-					return false;
-				}
+		for (int i = 0; i < map.length; i++) {
+			if (map[i] != b) {
+				return false;
 			}
 		}
 		return true;
@@ -79,10 +144,14 @@ public class ByteMap {
 	 * @param b
 	 */
 	public void setAll(byte b) {
-		for (int x = 0; x < map.length; x++) {
-			for (int y = 0; y < map[x].length; y++) {
-				map[x][y] = b;
-			}
+		if (map.length == 0) {
+			return;
+		}
+		// Doubles the filled part with every copy
+		map[0] = b;
+		for (int filled = 1; filled < map.length; filled *= 2) {
+			System.arraycopy(map, 0, map, filled,
+					Math.min(filled, map.length - filled));
 		}
 	}
 
@@ -94,11 +163,10 @@ public class ByteMap {
 	 */
 	public List<BytePoint> getAll(byte b) {
 		List<BytePoint> result = new LinkedList<BytePoint>();
-		for (byte x = 0; x < map.length; x++) {
-			for (byte y = 0; y < map[x].length; y++) {
-				if (map[x][y] == b) {
-					result.add(new BytePoint(x, y));
-				}
+		for (int i = 0; i < map.length; i++) {
+			if (map[i] == b) {
+				result.add(new BytePoint((byte) (i / height),
+						(byte) (i % height)));
 			}
 		}
 		return result;
@@ -0,0 +1,133 @@
+/**
+ * The configuration space of a surrounding for a given minimum distance. Every
+ * cell knows whether the robot may pass it, that is whether it is inside the
+ * map, not in an obstacle and farther than minDistance away from any wall or
+ * obstacle. This has to be calculated only once per surrounding and minimum
+ * distance, so graph searches only have to look up a cell instead of
+ * calculating the distance to every obstacle for every neighbor.
+ *
+ * Optionally cells close to walls and obstacles get a penalty (soft cost), so
+ * paths keep some more distance where there is enough space.
+ *
+ * @author Johannes
+ *
+ */
+public class ClearanceMap implements PassableGrid {
+
+	/**
+	 * True where the robot may not pass
+	 */
+	BooleanMap blocked;
+
+	/**
+	 * Additional costs of passing a cell or null if there are no soft costs
+	 */
+	ByteMap penalties;
+
+	/**
+	 * Minimum distance this map was built for
+	 */
+	int minDistance;
+
+	/**
+	 * Builds the clearance map without soft costs.
+	 *
+	 * @param surrounding
+	 * @param minDistance
+	 */
+	public ClearanceMap(Surrounding surrounding, int minDistance) {
+		this(surrounding, minDistance, 0);
+	}
+
+	/**
+	 * Builds the clearance map.
+	 *
+	 * @param surrounding
+	 * @param minDistance
+	 *            Cells that are not farther away from any wall or obstacle
+	 *            than this are blocked.
+	 * @param softCostRange
+	 *            Passable cells closer than minDistance + softCostRange to a
+	 *            wall or obstacle get a penalty that grows by one per unit
+	 *            they are closer. 0 disables soft costs.
+	 */
+	public ClearanceMap(Surrounding surrounding, int minDistance,
+			int softCostRange) {
+		this.minDistance = minDistance;
+		this.blocked = surrounding.toBooleanMap();
+		if (softCostRange > 0) {
+			this.penalties = new ByteMap(blocked.getWidth(),
+					blocked.getHeight());
+		}
+		for (byte x = 0; x < blocked.getWidth(); x++) {
+			for (byte y = 0; y < blocked.getHeight(); y++) {
+				if (blocked.get(x, y)) {
+					continue;
+				}
+				double distance = surrounding.distanceToNonPassableArea(x, y);
+				if (distance <= minDistance) {
+					blocked.set(x, y, true);
+				} else if (penalties != null
+						&& distance < minDistance + softCostRange) {
+					penalties.set(x, y, (byte) Math.ceil(minDistance
+							+ softCostRange - distance));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if the robot may pass the given cell.
+	 *
+	 * @param x
+	 * @param y
+	 * @return false if (x,y) is outside the map, in an obstacle or too close
+	 *         to a wall or obstacle
+	 */
+	@Override
+	public boolean isPassable(int x, int y) {
+		// Checked as int, so coordinates that do not fit into a byte are not
+		// wrapped into the map
+		return x >= 0 && y >= 0 && x < blocked.getWidth()
+				&& y < blocked.getHeight() && !blocked.get((byte) x, (byte) y);
+	}
+
+	/**
+	 * Additional cost of passing the given (passable) cell.
+	 *
+	 * @param x
+	 * @param y
+	 * @return 0 if soft costs are disabled
+	 */
+	public byte getPenalty(byte x, byte y) {
+		return penalties == null ? 0 : penalties.get(x, y);
+	}
+
+	/**
+	 * Converts the clearance map into a boolean map.
+	 *
+	 * @return BooleanMap that is true where the robot may not pass (copy)
+	 */
+	public BooleanMap toBooleanMap() {
+		return new BooleanMap(blocked);
+	}
+
+	public int getMinDistance() {
+		return minDistance;
+	}
+
+	@Override
+	public int getWidth() {
+		return blocked.getWidth();
+	}
+
+	@Override
+	public int getHeight() {
+		return blocked.getHeight();
+	}
+
+	@Override
+	public String toString() {
+		return blocked.toString();
+	}
+}
@@ -20,10 +20,12 @@ public class Constants {
 	public static final boolean VERBOSE = true;
 
 	/**
-	 * Use precalculated path to speedup actual execution on MindStorm. You have
-	 * to provide the lines by hand in Main.java!
+	 * Use paths stored by earlier runs to speedup actual execution on
+	 * MindStorm (see PathCache.java). A path is only reused if neither the
+	 * surrounding nor the planning constants changed, so changes to the
+	 * planners themselves are not noticed: clear the cache after those.
 	 */
-	public static final boolean USE_PRECALCULATED_PATH = false;
+	public static final boolean USE_PATH_CACHE = false;
 
 	/**
 	 * Random, used for particle filter, movement noise etc.
@@ -35,6 +37,65 @@ public class Constants {
 	 */
 	public static final int MIN_DISTANCE = 4;
 
+	/**
+	 * Graph search used to find the path (see PlannerMode.java)
+	 */
+	public static final PlannerMode PLANNER_MODE = PlannerMode.A_STAR;
+
+	/**
+	 * Width and height of the clusters of PlannerMode.HIERARCHICAL
+	 */
+	public static final int HPA_CLUSTER_SIZE = 10;
+
+	/**
+	 * Time in ms after which PlannerMode.ANYTIME stops improving its path and
+	 * returns the best one found so far. The first path is always searched
+	 * to the end, so planning can take longer than this.
+	 */
+	public static final long PLANNING_TIME_BUDGET_MS = 2000;
+
+	/**
+	 * Cells closer than MIN_DISTANCE + CLEARANCE_SOFT_COST_RANGE to walls and
+	 * obstacles are more expensive for path planning, so paths keep more
+	 * distance where possible. 0 disables this. (1 ^= 5cm)
+	 *
+	 * PlannerMode.JUMP_POINT_SEARCH ignores this, as jumping over cells needs
+	 * uniform costs. PlannerMode.HIERARCHICAL only uses it when it falls back
+	 * to a plain search, not for its abstract paths.
+	 */
+	public static final int CLEARANCE_SOFT_COST_RANGE = 0;
+
+	/**
+	 * Width and height of the buckets of ObstacleIndex.java. Smaller buckets
+	 * prune more obstacles, but need more memory. (1 ^= 5cm)
+	 */
+	public static final int OBSTACLE_INDEX_BUCKET_SIZE = 8;
+
+	/**
+	 * How the simulated ultrasonic sensor follows its rays (see
+	 * RayCastMode.java)
+	 */
+	public static final RayCastMode RAY_CAST_MODE = RayCastMode.DDA;
+
+	/**
+	 * Answer the simulated sensors from a precomputed RangeTable.java instead
+	 * of casting rays. Building the table takes long and it needs far more
+	 * memory than the NXT has, so only use this locally.
+	 */
+	public static final boolean USE_RANGE_TABLE = false;
+
+	/**
+	 * Number of headings per cell of the RangeTable.java
+	 */
+	public static final int RANGE_TABLE_HEADING_BINS = 72;
+
+	/**
+	 * Learn an OccupancyGrid.java from the ultrasonic measurements in every
+	 * cycle of the main loop. Nothing uses the grid yet, and the updates make
+	 * every cycle on the NXT slower, so this is off by default.
+	 */
+	public static final boolean OCCUPANCY_MAPPING = false;
+
 	/**
 	 * The number of particles used for the particle filter. The higher this
 	 * value is, the longer it will take the robot to resample between
@@ -104,4 +165,47 @@ public class Constants {
 		public static final double ERROR_SDEV = 100.;
 
 	}
+
+	/**
+	 * Constants for OccupancyGrid.java
+	 * 
+	 * @author Johannes
+	 * 
+	 */
+	public class OccupancyGrid {
+
+		/**
+		 * Log odds are stored as value * LOG_ODDS_SCALE, e.g. 20 ^= 1.0
+		 */
+		public static final double LOG_ODDS_SCALE = 20.;
+
+		/**
+		 * Added to cells at the measured distance (^= p = 0.7)
+		 */
+		public static final int LOG_ODDS_OCCUPIED = 17;
+
+		/**
+		 * Added to cells closer than the measured distance (^= p = 0.4)
+		 */
+		public static final int LOG_ODDS_FREE = -8;
+
+		/**
+		 * Log odds saturate here, so cells can still change their state
+		 * quickly if the surrounding changes
+		 */
+		public static final int LOG_ODDS_MIN = -100;
+		public static final int LOG_ODDS_MAX = 100;
+
+		/**
+		 * Cells with at least these log odds count as occupied
+		 */
+		public static final int OCCUPIED_THRESHOLD = 20;
+
+		/**
+		 * Cells within this distance of the measured distance count as hit. 1
+		 * ^= 5cm
+		 */
+		public static final double HIT_THICKNESS = 1.;
+
+	}
 }
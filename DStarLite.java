@@ -0,0 +1,413 @@
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Incremental path planning with D* Lite (Koenig, Likhachev). The search runs
+ * backwards from the goal and keeps its state between plans. When cells of
+ * the map change (e.g. an obstacle was added to the surrounding) only the
+ * affected part of the search is repaired, so replanning takes time
+ * proportional to the change and not to the size of the map. The robot may
+ * also move on between plans.
+ *
+ * Costs are the same as in AStar.java (1 for straight, 2 for diagonal moves,
+ * plus the penalty of the entered cell, see ClearanceMap.getPenalty), so the
+ * heuristics function is the manhattan distance. This keeps all keys
+ * integer, which allows to store both parts of a key in one double.
+ *
+ * @author Johannes
+ *
+ */
+public class DStarLite {
+
+	/**
+	 * The second part of a key is added to the first one multiplied by this
+	 * factor, which is bigger than any finite score.
+	 */
+	static final double KEY_FACTOR = 1 << 24;
+
+	static final float INFINITY = Float.POSITIVE_INFINITY;
+
+	Surrounding surrounding;
+	int minDistance;
+	int width;
+	int height;
+
+	/**
+	 * True where the robot may not pass. This is a copy of the clearance map,
+	 * that is updated with every change.
+	 */
+	BooleanMap blocked;
+
+	/**
+	 * Copy of the penalties of the clearance map (see
+	 * ClearanceMap.getPenalty), that is updated with every change. null if
+	 * there are no soft costs.
+	 */
+	ByteMap penalties;
+	int softCostRange;
+
+	/**
+	 * Cost from every cell to the goal
+	 */
+	float[] gScores;
+
+	/**
+	 * One step lookahead of gScores
+	 */
+	float[] rhs;
+
+	IndexedHeap openSet;
+
+	int start;
+	int goal;
+
+	/**
+	 * Start at the time of the last plan, used to update keyModifier
+	 */
+	int lastStart;
+
+	/**
+	 * Accumulated heuristics offset because the start moved
+	 */
+	double keyModifier;
+
+	/**
+	 * Initialises the search from start to goal of the surrounding. Only
+	 * points that are valid in the given surrounding and that have more than
+	 * minDistance to any wall or obstacle are considered.
+	 *
+	 * @param surrounding
+	 * @param minDistance
+	 */
+	public DStarLite(Surrounding surrounding, int minDistance) {
+		this.surrounding = surrounding;
+		this.minDistance = minDistance;
+		ClearanceMap clearance = surrounding.getClearanceMap(minDistance);
+		this.blocked = clearance.toBooleanMap();
+		if (clearance.penalties != null) {
+			this.penalties = new ByteMap(clearance.penalties);
+			this.softCostRange = Constants.CLEARANCE_SOFT_COST_RANGE;
+		}
+		this.width = blocked.getWidth();
+		this.height = blocked.getHeight();
+		this.gScores = new float[width * height];
+		this.rhs = new float[width * height];
+		for (int i = 0; i < gScores.length; i++) {
+			gScores[i] = INFINITY;
+			rhs[i] = INFINITY;
+		}
+		this.openSet = new IndexedHeap(width * height);
+		this.start = index(surrounding.getStart());
+		this.lastStart = start;
+		this.goal = index(surrounding.getGoal());
+		rhs[goal] = 0;
+		openSet.add(goal, key(goal));
+	}
+
+	/**
+	 * Computes the (shortest) path from the current start to the goal. Only
+	 * the parts of the search that changed since the last call are redone.
+	 *
+	 * @return Path or null, if no path found
+	 */
+	public List<BytePoint> computePath() {
+		computeShortestPath();
+		if (gScores[start] == INFINITY) {
+			return null;
+		}
+		List<BytePoint> result = new LinkedList<BytePoint>();
+		int current = start;
+		result.add(point(current));
+		// Every step decreases the cost to the goal, so this terminates. The
+		// limit only guards against inconsistent states.
+		for (int steps = 0; current != goal && steps < gScores.length; steps++) {
+			int x = current / height;
+			int y = current % height;
+			int next = -1;
+			float nextCost = INFINITY;
+			for (int neighborX = x - 1; neighborX <= x + 1; neighborX++) {
+				for (int neighborY = y - 1; neighborY <= y + 1; neighborY++) {
+					if (!isPassable(neighborX, neighborY)
+							|| neighborX == x && neighborY == y) {
+						continue;
+					}
+					int neighbor = neighborX * height + neighborY;
+					float cost = cost(current, neighbor) + gScores[neighbor];
+					if (cost < nextCost) {
+						nextCost = cost;
+						next = neighbor;
+					}
+				}
+			}
+			if (next < 0) {
+				return null;
+			}
+			current = next;
+			result.add(point(current));
+		}
+		return current == goal ? result : null;
+	}
+
+	/**
+	 * Tells the search that the robot moved. The search is not redone until
+	 * the next call of computePath.
+	 *
+	 * @param newStart
+	 */
+	public void moveStart(BytePoint newStart) {
+		start = index(newStart);
+		keyModifier += heuristic(lastStart, start);
+		lastStart = start;
+	}
+
+	/**
+	 * Tells the search that the given obstacle was added to the surrounding.
+	 * Adding an obstacle can only block cells and raise penalties, so only the
+	 * cells that are at most minDistance away from the obstacle are blocked
+	 * and the penalties of the cells in the soft cost range are raised
+	 * where needed (see ClearanceMap.java). This is calculated
+	 * from the rectangle itself, not from the distances of the surrounding,
+	 * so the time only depends on the size of the obstacle.
+	 *
+	 * @param obstacle
+	 */
+	public void obstacleAdded(ByteRectangle obstacle) {
+		BytePoint lowLeft = obstacle.getLowerLeftCorner();
+		BytePoint upRight = obstacle.getUpperRightCorner();
+		int xMin = lowLeft.getX();
+		int yMin = lowLeft.getY();
+		int xMax = upRight.getX();
+		int yMax = upRight.getY();
+		int range = minDistance + softCostRange;
+		for (int x = Math.max(xMin - range, 0); x <= Math.min(xMax + range,
+				width - 1); x++) {
+			for (int y = Math.max(yMin - range, 0); y <= Math.min(yMax
+					+ range, height - 1); y++) {
+				// Distance to the rectangle as in ObstacleIndex.java
+				int dx = Math.max(0, Math.max(xMin - x, x - xMax));
+				int dy = Math.max(0, Math.max(yMin - y, y - yMax));
+				obstacleNear(x, y, Math.sqrt(dx * dx + dy * dy));
+			}
+		}
+	}
+
+	/**
+	 * Tells the search that the given polygon was added to the surrounding,
+	 * like obstacleAdded(ByteRectangle), with the distances of the cells to
+	 * the polygon (see Polygon.distance).
+	 *
+	 * @param polygon
+	 */
+	public void obstacleAdded(Polygon polygon) {
+		int range = minDistance + softCostRange;
+		int xMin = Math.max((int) Math.floor(polygon.xMin - range), 0);
+		int yMin = Math.max((int) Math.floor(polygon.yMin - range), 0);
+		int xMax = Math.min((int) Math.ceil(polygon.xMax + range), width - 1);
+		int yMax = Math.min((int) Math.ceil(polygon.yMax + range), height - 1);
+		for (int x = xMin; x <= xMax; x++) {
+			for (int y = yMin; y <= yMax; y++) {
+				obstacleNear(x, y, polygon.distance(x, y));
+			}
+		}
+	}
+
+	/**
+	 * Recalculates the passability of all cells in the given area from the
+	 * surrounding and repairs the search where it changed. This asks the
+	 * surrounding for distances, which rebuilds its distance field after
+	 * every change of the map, so prefer obstacleAdded for new obstacles.
+	 *
+	 * @param xMin
+	 * @param yMin
+	 * @param xMax
+	 *            Inclusive
+	 * @param yMax
+	 *            Inclusive
+	 */
+	public void refresh(int xMin, int yMin, int xMax, int yMax) {
+		for (int x = Math.max(xMin, 0); x <= Math.min(xMax, width - 1); x++) {
+			for (int y = Math.max(yMin, 0); y <= Math.min(yMax, height - 1); y++) {
+				double distance = surrounding.distanceToNonPassableArea(
+						(byte) x, (byte) y);
+				setBlocked((byte) x, (byte) y,
+						!surrounding.isIn((byte) x, (byte) y)
+								|| distance <= minDistance);
+				setPenalty(x, y, penalty(distance));
+			}
+		}
+	}
+
+	/**
+	 * Changes the passability of a single cell and repairs the search. Use
+	 * this for changes that are not given by the surrounding, e.g. cells that
+	 * were detected to be blocked.
+	 *
+	 * @param x
+	 * @param y
+	 * @param isBlocked
+	 */
+	public void setBlocked(byte x, byte y, boolean isBlocked) {
+		if (!blocked.isValid(x, y) || blocked.get(x, y) == isBlocked) {
+			return;
+		}
+		blocked.set(x, y, isBlocked);
+		// Only the costs of moves into (x,y) changed, which are the moves of
+		// its neighbors
+		for (int neighborX = x - 1; neighborX <= x + 1; neighborX++) {
+			for (int neighborY = y - 1; neighborY <= y + 1; neighborY++) {
+				if (isValid(neighborX, neighborY)
+						&& (neighborX != x || neighborY != y)) {
+					updateVertex(neighborX * height + neighborY);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Changes the penalty of a single cell and repairs the search.
+	 */
+	private void setPenalty(int x, int y, int penalty) {
+		if (penalties == null || penalties.get(x, y) == penalty) {
+			return;
+		}
+		penalties.set(x, y, (byte) penalty);
+		// Like in setBlocked only the moves into (x,y) changed
+		updateNeighbors(x * height + y);
+	}
+
+	/**
+	 * Blocks (x,y) or raises its penalty, if the given distance to a new
+	 * obstacle requires it.
+	 */
+	private void obstacleNear(int x, int y, double distance) {
+		if (distance <= minDistance) {
+			setBlocked((byte) x, (byte) y, true);
+		} else if (penalties != null
+				&& penalty(distance) > penalties.get(x, y)) {
+			setPenalty(x, y, penalty(distance));
+		}
+	}
+
+	/**
+	 * Penalty of a passable cell with the given distance to the closest wall
+	 * or obstacle, as in ClearanceMap.java
+	 */
+	private int penalty(double distance) {
+		if (distance <= minDistance || distance >= minDistance + softCostRange) {
+			return 0;
+		}
+		return (int) Math.ceil(minDistance + softCostRange - distance);
+	}
+
+	public boolean isBlocked(byte x, byte y) {
+		return !isPassable(x, y);
+	}
+
+	private void computeShortestPath() {
+		while (openSet.peekMinimumKey() < key(start)
+				|| rhs[start] != gScores[start]) {
+			double oldKey = openSet.peekMinimumKey();
+			int current = openSet.removeMinimum();
+			if (current < 0) {
+				break;
+			}
+			double newKey = key(current);
+			if (oldKey < newKey) {
+				openSet.add(current, newKey);
+			} else if (gScores[current] > rhs[current]) {
+				gScores[current] = rhs[current];
+				updateNeighbors(current);
+			} else {
+				gScores[current] = INFINITY;
+				updateVertex(current);
+				updateNeighbors(current);
+			}
+		}
+	}
+
+	private void updateNeighbors(int cell) {
+		int x = cell / height;
+		int y = cell % height;
+		for (int neighborX = x - 1; neighborX <= x + 1; neighborX++) {
+			for (int neighborY = y - 1; neighborY <= y + 1; neighborY++) {
+				if (isValid(neighborX, neighborY)
+						&& (neighborX != x || neighborY != y)) {
+					updateVertex(neighborX * height + neighborY);
+				}
+			}
+		}
+	}
+
+	private void updateVertex(int cell) {
+		if (cell != goal) {
+			int x = cell / height;
+			int y = cell % height;
+			float min = INFINITY;
+			for (int neighborX = x - 1; neighborX <= x + 1; neighborX++) {
+				for (int neighborY = y - 1; neighborY <= y + 1; neighborY++) {
+					if (!isPassable(neighborX, neighborY)
+							|| neighborX == x && neighborY == y) {
+						continue;
+					}
+					int neighbor = neighborX * height + neighborY;
+					float value = cost(cell, neighbor) + gScores[neighbor];
+					if (value < min) {
+						min = value;
+					}
+				}
+			}
+			rhs[cell] = min;
+		}
+		if (gScores[cell] != rhs[cell]) {
+			openSet.add(cell, key(cell));
+		} else {
+			openSet.remove(cell);
+		}
+	}
+
+	/**
+	 * Lexicographic key [min(g, rhs) + h + keyModifier; min(g, rhs)] packed
+	 * into one double.
+	 */
+	private double key(int cell) {
+		float min = Math.min(gScores[cell], rhs[cell]);
+		if (min == INFINITY) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return (min + heuristic(start, cell) + keyModifier) * KEY_FACTOR + min;
+	}
+
+	/**
+	 * Cost of moving from one cell to a passable neighbor. Diagonal moves have
+	 * cost 2, the penalty of the neighbor is added.
+	 */
+	private float cost(int from, int to) {
+		return (from / height != to / height && from % height != to % height ? 2
+				: 1) + (penalties == null ? 0 : penalties.get(to));
+	}
+
+	/**
+	 * Manhattan distance, which is the exact cost without obstacles if
+	 * diagonal moves cost 2.
+	 */
+	private int heuristic(int from, int to) {
+		return Math.abs(from / height - to / height)
+				+ Math.abs(from % height - to % height);
+	}
+
+	private boolean isValid(int x, int y) {
+		return x >= 0 && y >= 0 && x < width && y < height;
+	}
+
+	private boolean isPassable(int x, int y) {
+		return isValid(x, y) && !blocked.get((byte) x, (byte) y);
+	}
+
+	private int index(BytePoint p) {
+		return p.getX() * height + p.getY();
+	}
+
+	private BytePoint point(int cell) {
+		return new BytePoint((byte) (cell / height), (byte) (cell % height));
+	}
+}
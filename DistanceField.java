@@ -0,0 +1,167 @@
+/**
+ * Distance from every cell of a map to the closest wall or obstacle. Built with
+ * the exact euclidean distance transform of Felzenszwalb and Huttenlocher,
+ * which takes time linear in the number of cells: first the squared distance to
+ * the closest obstacle cell in the same column is calculated, then the lower
+ * envelope of parabolas gives the closest one in the whole map for every row.
+ *
+ * Distances are stored as fixed point shorts (distance * SCALE, rounded up),
+ * which needs half the memory of floats. As they are rounded up, comparing a
+ * distance with a whole number gives the same result as the exact distance.
+ *
+ * The distance to the walls is the same as in Surrounding.java: a cell (x,y)
+ * has distance min(x, width - x, y, height - y).
+ *
+ * @author Johannes
+ *
+ */
+public class DistanceField {
+
+	/**
+	 * Fixed point factor, so the resolution is 1/64 cell
+	 */
+	static final int SCALE = 64;
+
+	/**
+	 * Stands for "no obstacle in this column" while building
+	 */
+	static final short NO_OBSTACLE = Short.MAX_VALUE;
+
+	/**
+	 * Bigger than any squared distance, but small enough to be subtracted
+	 * from itself
+	 */
+	static final double INFINITY = 1e20;
+
+	int width;
+	int height;
+
+	/**
+	 * Distance * SCALE of cell (x,y) at x * height + y
+	 */
+	short[] distances;
+
+	/**
+	 * Builds the distance field of the map.
+	 *
+	 * @param occupied
+	 *            True where obstacles are
+	 */
+	public DistanceField(BooleanMap occupied) {
+		this.width = occupied.getWidth();
+		this.height = occupied.getHeight();
+		this.distances = new short[width * height];
+		build(occupied);
+	}
+
+	/**
+	 * Rebuilds the distance field after the map changed. The size of the map
+	 * may not change.
+	 *
+	 * @param occupied
+	 */
+	public void build(BooleanMap occupied) {
+		if (occupied.getWidth() != width || occupied.getHeight() != height) {
+			throw new IllegalArgumentException("map has a different size");
+		}
+		int length = Math.max(width, height);
+		double[] f = new double[length];
+		double[] d = new double[length];
+		int[] v = new int[length];
+		double[] z = new double[length + 1];
+
+		// Squared distance to the closest obstacle in the same column. These
+		// are at most 127^2, so they fit into the distances while building.
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				f[y] = occupied.get((byte) x, (byte) y) ? 0 : INFINITY;
+			}
+			transform(f, height, d, v, z);
+			for (int y = 0; y < height; y++) {
+				distances[x * height + y] = d[y] >= NO_OBSTACLE ? NO_OBSTACLE
+						: (short) d[y];
+			}
+		}
+
+		// Squared distance to the closest obstacle in the map, which is at
+		// most 2 * 127^2, then combined with the distance to the walls
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				short column = distances[x * height + y];
+				f[x] = column == NO_OBSTACLE ? INFINITY : column;
+			}
+			transform(f, width, d, v, z);
+			for (int x = 0; x < width; x++) {
+				double distance = Math.min(Math.sqrt(d[x]), wallDistance(x, y));
+				distances[x * height + y] = (short) Math.ceil(distance * SCALE);
+			}
+		}
+	}
+
+	/**
+	 * Distance of (x,y) to the closest wall or obstacle.
+	 *
+	 * @param x
+	 *            Must be in the map
+	 * @param y
+	 *            Must be in the map
+	 * @return Rounded up to 1/SCALE
+	 */
+	public double get(int x, int y) {
+		return (double) distances[x * height + y] / SCALE;
+	}
+
+	public boolean isValid(int x, int y) {
+		return !(x < 0 || y < 0 || x >= width || y >= height);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	private double wallDistance(int x, int y) {
+		return Math.min(Math.min(x, width - x), Math.min(y, height - y));
+	}
+
+	/**
+	 * One dimensional distance transform of the sampled function f: d[q] =
+	 * min over p of (q - p)^2 + f[p]. v holds the positions of the parabolas
+	 * of the lower envelope and z the boundaries between them.
+	 */
+	static void transform(double[] f, int n, double[] d, int[] v,
+			double[] z) {
+		int k = 0;
+		v[0] = 0;
+		z[0] = -INFINITY;
+		z[1] = INFINITY;
+		for (int q = 1; q < n; q++) {
+			double s = intersection(f, q, v[k]);
+			while (s <= z[k]) {
+				k--;
+				s = intersection(f, q, v[k]);
+			}
+			k++;
+			v[k] = q;
+			z[k] = s;
+			z[k + 1] = INFINITY;
+		}
+		k = 0;
+		for (int q = 0; q < n; q++) {
+			while (z[k + 1] < q) {
+				k++;
+			}
+			d[q] = (q - v[k]) * (q - v[k]) + f[v[k]];
+		}
+	}
+
+	/**
+	 * Position where the parabolas rooted at q and p intersect
+	 */
+	private static double intersection(double[] f, int q, int p) {
+		return (f[q] + q * q - (f[p] + p * p)) / (2 * q - 2 * p);
+	}
+}
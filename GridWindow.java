@@ -0,0 +1,66 @@
+/**
+ * Restricts a PassableGrid to a rectangular window. Cells outside the window
+ * are not passable, but coordinates and cell indices stay the same as in the
+ * underlying grid, so searches on the window can share a SearchWorkspace with
+ * searches on the whole grid.
+ * 
+ * @author Johannes
+ * 
+ */
+public class GridWindow implements PassableGrid {
+
+	PassableGrid grid;
+	int minX;
+	int minY;
+	int maxX;
+	int maxY;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param grid
+	 * @param minX
+	 * @param minY
+	 * @param maxX
+	 *            Inclusive
+	 * @param maxY
+	 *            Inclusive
+	 */
+	public GridWindow(PassableGrid grid, int minX, int minY, int maxX, int maxY) {
+		this.grid = grid;
+		set(minX, minY, maxX, maxY);
+	}
+
+	/**
+	 * Moves the window.
+	 * 
+	 * @param minX
+	 * @param minY
+	 * @param maxX
+	 *            Inclusive
+	 * @param maxY
+	 *            Inclusive
+	 */
+	public void set(int minX, int minY, int maxX, int maxY) {
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+	}
+
+	@Override
+	public int getWidth() {
+		return grid.getWidth();
+	}
+
+	@Override
+	public int getHeight() {
+		return grid.getHeight();
+	}
+
+	@Override
+	public boolean isPassable(int x, int y) {
+		return x >= minX && y >= minY && x <= maxX && y <= maxY
+				&& grid.isPassable(x, y);
+	}
+}
@@ -0,0 +1,468 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical path planning (HPA*). The grid is split into square clusters.
+ * Where two neighboring clusters share passable cells on their border,
+ * entrances are placed, each consisting of one abstract node on either side.
+ * Within every cluster the costs between all of its abstract nodes are
+ * precalculated. This abstraction is built only once per grid.
+ *
+ * A query then only connects start and goal to the abstract nodes of their
+ * clusters, searches the (small) abstract graph and refines the result by
+ * searching within one cluster at a time. So the cost of a query hardly
+ * depends on the size of the map anymore. The paths are near optimal, but
+ * not necessarily optimal.
+ *
+ * @author Johannes
+ *
+ */
+public class HierarchicalPlanner {
+
+	/**
+	 * Entrances that are wider than this get an abstract node at both ends
+	 * instead of one in the middle.
+	 */
+	static final int MAX_SINGLE_TRANSITION_WIDTH = 6;
+
+	/**
+	 * Marks a cell without abstract node
+	 */
+	static final int NO_NODE = -1;
+
+	PassableGrid grid;
+	int clusterSize;
+	int clustersX;
+	int clustersY;
+
+	/**
+	 * Abstract node of every cell or NO_NODE
+	 */
+	int[] nodeOfCell;
+
+	/**
+	 * Cell of every abstract node
+	 */
+	int[] cellOfNode;
+	int nodeCount;
+
+	/**
+	 * Edges of every abstract node (target nodes and costs). Only the first
+	 * edgeCount[node] entries are used.
+	 */
+	int[][] edgeTargets;
+	float[][] edgeCosts;
+	int[] edgeCount;
+
+	/**
+	 * Abstract nodes of every cluster. Only the first nodesInCluster[cluster]
+	 * entries are used.
+	 */
+	int[][] clusterNodes;
+	int[] nodesInCluster;
+
+	/**
+	 * Used for all searches on the grid
+	 */
+	SearchWorkspace workspace;
+	GridWindow window;
+
+	/**
+	 * Builds the abstraction of the grid.
+	 *
+	 * @param grid
+	 * @param clusterSize
+	 *            Width and height of a cluster
+	 */
+	public HierarchicalPlanner(PassableGrid grid, int clusterSize) {
+		if (clusterSize < 2) {
+			throw new IllegalArgumentException("clusterSize must be at least 2");
+		}
+		this.grid = grid;
+		this.clusterSize = clusterSize;
+		this.clustersX = (grid.getWidth() + clusterSize - 1) / clusterSize;
+		this.clustersY = (grid.getHeight() + clusterSize - 1) / clusterSize;
+		this.workspace = new SearchWorkspace(grid.getWidth() * grid.getHeight());
+		this.window = new GridWindow(grid, 0, 0, 0, 0);
+
+		nodeOfCell = new int[grid.getWidth() * grid.getHeight()];
+		for (int i = 0; i < nodeOfCell.length; i++) {
+			nodeOfCell[i] = NO_NODE;
+		}
+		cellOfNode = new int[16];
+		edgeTargets = new int[16][];
+		edgeCosts = new float[16][];
+		edgeCount = new int[16];
+		clusterNodes = new int[clustersX * clustersY][];
+		nodesInCluster = new int[clustersX * clustersY];
+		for (int i = 0; i < clusterNodes.length; i++) {
+			clusterNodes[i] = new int[4];
+		}
+
+		buildEntrances();
+		for (int cluster = 0; cluster < clusterNodes.length; cluster++) {
+			for (int i = 0; i < nodesInCluster[cluster]; i++) {
+				for (int j = i + 1; j < nodesInCluster[cluster]; j++) {
+					connectInCluster(clusterNodes[cluster][i],
+							clusterNodes[cluster][j], cluster);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds a path from start to goal.
+	 *
+	 * @param startX
+	 * @param startY
+	 * @param goalX
+	 * @param goalY
+	 * @return Cell indices (x * height + y) of the path or null, if no path
+	 *         found
+	 */
+	public int[] compute(int startX, int startY, int goalX, int goalY) {
+		if (!grid.isPassable(goalX, goalY)) {
+			// Like in WideAStar.java only the start may be blocked
+			return null;
+		}
+		int height = grid.getHeight();
+		int startCluster = clusterOf(startX, startY);
+		int goalCluster = clusterOf(goalX, goalY);
+		if (startCluster == goalCluster) {
+			// Try to stay within the cluster first
+			setWindow(startCluster);
+			int[] local = WideAStar.compute(window, startX, startY, goalX,
+					goalY, workspace);
+			if (local != null) {
+				return local;
+			}
+		}
+
+		// Temporarily insert start and goal into the abstract graph. The
+		// number of nodes and edges is remembered to remove them afterwards.
+		int previousNodeCount = nodeCount;
+		int[] previousEdgeCount = new int[nodeCount];
+		System.arraycopy(edgeCount, 0, previousEdgeCount, 0, nodeCount);
+		int previousStartClusterNodes = nodesInCluster[startCluster];
+		int previousGoalClusterNodes = nodesInCluster[goalCluster];
+		try {
+			int startNode = insertTemporary(startX * height + startY,
+					startCluster);
+			int goalNode = insertTemporary(goalX * height + goalY, goalCluster);
+			int[] abstractPath = searchAbstract(startNode, goalNode);
+			if (abstractPath == null) {
+				// Entrances only cover straight moves across cluster borders.
+				// Passages that can only be crossed diagonally are missed, so
+				// make sure there really is no path.
+				return WideAStar.compute(grid, startX, startY, goalX, goalY,
+						workspace);
+			}
+			return refine(abstractPath);
+		} finally {
+			for (int node = previousNodeCount; node < nodeCount; node++) {
+				nodeOfCell[cellOfNode[node]] = NO_NODE;
+			}
+			nodeCount = previousNodeCount;
+			System.arraycopy(previousEdgeCount, 0, edgeCount, 0,
+					previousNodeCount);
+			nodesInCluster[startCluster] = previousStartClusterNodes;
+			nodesInCluster[goalCluster] = previousGoalClusterNodes;
+		}
+	}
+
+	/**
+	 * Number of abstract nodes (without temporary start and goal nodes)
+	 *
+	 * @return
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	public PassableGrid getGrid() {
+		return grid;
+	}
+
+	public int getClusterSize() {
+		return clusterSize;
+	}
+
+	/**
+	 * Places entrances on all borders between horizontally and vertically
+	 * neighboring clusters.
+	 */
+	private void buildEntrances() {
+		// Vertical borders (between cluster columns)
+		for (int border = clusterSize; border < grid.getWidth(); border += clusterSize) {
+			for (int y0 = 0; y0 < grid.getHeight(); y0 += clusterSize) {
+				int y1 = Math.min(y0 + clusterSize, grid.getHeight()) - 1;
+				int runStart = -1;
+				for (int y = y0; y <= y1 + 1; y++) {
+					boolean open = y <= y1 && grid.isPassable(border - 1, y)
+							&& grid.isPassable(border, y);
+					if (open && runStart < 0) {
+						runStart = y;
+					} else if (!open && runStart >= 0) {
+						addVerticalEntrance(border, runStart, y - 1);
+						runStart = -1;
+					}
+				}
+			}
+		}
+		// Horizontal borders (between cluster rows)
+		for (int border = clusterSize; border < grid.getHeight(); border += clusterSize) {
+			for (int x0 = 0; x0 < grid.getWidth(); x0 += clusterSize) {
+				int x1 = Math.min(x0 + clusterSize, grid.getWidth()) - 1;
+				int runStart = -1;
+				for (int x = x0; x <= x1 + 1; x++) {
+					boolean open = x <= x1 && grid.isPassable(x, border - 1)
+							&& grid.isPassable(x, border);
+					if (open && runStart < 0) {
+						runStart = x;
+					} else if (!open && runStart >= 0) {
+						addHorizontalEntrance(border, runStart, x - 1);
+						runStart = -1;
+					}
+				}
+			}
+		}
+	}
+
+	private void addVerticalEntrance(int border, int from, int to) {
+		if (to - from + 1 > MAX_SINGLE_TRANSITION_WIDTH) {
+			addTransition(border - 1, from, border, from);
+			addTransition(border - 1, to, border, to);
+		} else {
+			int middle = (from + to) / 2;
+			addTransition(border - 1, middle, border, middle);
+		}
+	}
+
+	private void addHorizontalEntrance(int border, int from, int to) {
+		if (to - from + 1 > MAX_SINGLE_TRANSITION_WIDTH) {
+			addTransition(from, border - 1, from, border);
+			addTransition(to, border - 1, to, border);
+		} else {
+			int middle = (from + to) / 2;
+			addTransition(middle, border - 1, middle, border);
+		}
+	}
+
+	/**
+	 * Adds abstract nodes on both sides of a border and connects them by a
+	 * straight move.
+	 */
+	private void addTransition(int x1, int y1, int x2, int y2) {
+		int node1 = nodeAt(x1, y1);
+		int node2 = nodeAt(x2, y2);
+		addEdge(node1, node2, 1);
+		addEdge(node2, node1, 1);
+	}
+
+	/**
+	 * Returns the abstract node of the cell, creates it if necessary.
+	 */
+	private int nodeAt(int x, int y) {
+		int cell = x * grid.getHeight() + y;
+		if (nodeOfCell[cell] == NO_NODE) {
+			int node = addNode(cell);
+			addToCluster(clusterOf(x, y), node);
+		}
+		return nodeOfCell[cell];
+	}
+
+	private int addNode(int cell) {
+		if (nodeCount == cellOfNode.length) {
+			int capacity = 2 * nodeCount;
+			cellOfNode = copyOf(cellOfNode, capacity);
+			edgeCount = copyOf(edgeCount, capacity);
+			int[][] targets = new int[capacity][];
+			float[][] costs = new float[capacity][];
+			System.arraycopy(edgeTargets, 0, targets, 0, nodeCount);
+			System.arraycopy(edgeCosts, 0, costs, 0, nodeCount);
+			edgeTargets = targets;
+			edgeCosts = costs;
+		}
+		int node = nodeCount++;
+		cellOfNode[node] = cell;
+		nodeOfCell[cell] = node;
+		edgeCount[node] = 0;
+		if (edgeTargets[node] == null) {
+			edgeTargets[node] = new int[4];
+			edgeCosts[node] = new float[4];
+		}
+		return node;
+	}
+
+	private void addToCluster(int cluster, int node) {
+		if (nodesInCluster[cluster] == clusterNodes[cluster].length) {
+			clusterNodes[cluster] = copyOf(clusterNodes[cluster],
+					2 * nodesInCluster[cluster]);
+		}
+		clusterNodes[cluster][nodesInCluster[cluster]++] = node;
+	}
+
+	private void addEdge(int from, int to, float cost) {
+		int count = edgeCount[from];
+		if (count == edgeTargets[from].length) {
+			edgeTargets[from] = copyOf(edgeTargets[from], 2 * count);
+			float[] costs = new float[2 * count];
+			System.arraycopy(edgeCosts[from], 0, costs, 0, count);
+			edgeCosts[from] = costs;
+		}
+		edgeTargets[from][count] = to;
+		edgeCosts[from][count] = cost;
+		edgeCount[from] = count + 1;
+	}
+
+	/**
+	 * Connects two abstract nodes of the same cluster, if there is a path
+	 * between them within the cluster.
+	 */
+	private void connectInCluster(int node1, int node2, int cluster) {
+		int height = grid.getHeight();
+		int cell1 = cellOfNode[node1];
+		int cell2 = cellOfNode[node2];
+		setWindow(cluster);
+		int[] path = WideAStar.compute(window, cell1 / height, cell1 % height,
+				cell2 / height, cell2 % height, workspace);
+		if (path != null) {
+			float cost = workspace.getGScore(cell2);
+			addEdge(node1, node2, cost);
+			addEdge(node2, node1, cost);
+		}
+	}
+
+	/**
+	 * Inserts a temporary abstract node for start or goal (unless the cell
+	 * already is an abstract node) and connects it to the other nodes of its
+	 * cluster.
+	 */
+	private int insertTemporary(int cell, int cluster) {
+		if (nodeOfCell[cell] != NO_NODE) {
+			return nodeOfCell[cell];
+		}
+		int node = addNode(cell);
+		for (int i = 0; i < nodesInCluster[cluster]; i++) {
+			connectInCluster(node, clusterNodes[cluster][i], cluster);
+		}
+		addToCluster(cluster, node);
+		return node;
+	}
+
+	/**
+	 * A star on the abstract graph with euclidean distance as heuristics
+	 * function.
+	 *
+	 * @return Abstract nodes from start to goal or null
+	 */
+	private int[] searchAbstract(int startNode, int goalNode) {
+		int height = grid.getHeight();
+		int goalCell = cellOfNode[goalNode];
+		int goalX = goalCell / height;
+		int goalY = goalCell % height;
+
+		float[] gScores = new float[nodeCount];
+		int[] cameFrom = new int[nodeCount];
+		boolean[] closed = new boolean[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			gScores[i] = Float.POSITIVE_INFINITY;
+			cameFrom[i] = NO_NODE;
+		}
+		IndexedHeap openSet = new IndexedHeap(nodeCount);
+		gScores[startNode] = 0;
+		openSet.add(startNode, heuristic(startNode, goalX, goalY));
+		while (!openSet.isEmpty()) {
+			int current = openSet.removeMinimum();
+			if (current == goalNode) {
+				int length = 0;
+				for (int node = goalNode; node != NO_NODE; node = cameFrom[node]) {
+					length++;
+				}
+				int[] path = new int[length];
+				for (int node = goalNode; node != NO_NODE; node = cameFrom[node]) {
+					path[--length] = node;
+				}
+				return path;
+			}
+			closed[current] = true;
+			for (int i = 0; i < edgeCount[current]; i++) {
+				int neighbor = edgeTargets[current][i];
+				if (closed[neighbor]) {
+					continue;
+				}
+				float tentativeGScore = gScores[current]
+						+ edgeCosts[current][i];
+				if (tentativeGScore < gScores[neighbor]) {
+					gScores[neighbor] = tentativeGScore;
+					cameFrom[neighbor] = current;
+					openSet.add(neighbor, tentativeGScore
+							+ heuristic(neighbor, goalX, goalY));
+				}
+			}
+		}
+		return null;
+	}
+
+	private double heuristic(int node, int goalX, int goalY) {
+		int cell = cellOfNode[node];
+		return WideAStar.heuristic(cell / grid.getHeight(),
+				cell % grid.getHeight(), goalX, goalY);
+	}
+
+	/**
+	 * Replaces every abstract edge by the cells it stands for.
+	 */
+	private int[] refine(int[] abstractPath) {
+		int height = grid.getHeight();
+		List<int[]> segments = new ArrayList<int[]>(abstractPath.length);
+		int length = 1;
+		for (int i = 1; i < abstractPath.length; i++) {
+			int from = cellOfNode[abstractPath[i - 1]];
+			int to = cellOfNode[abstractPath[i]];
+			int fromX = from / height;
+			int fromY = from % height;
+			int toX = to / height;
+			int toY = to % height;
+			int cluster = clusterOf(fromX, fromY);
+			int[] segment;
+			if (cluster != clusterOf(toX, toY)) {
+				// Transition between two clusters
+				segment = new int[] { from, to };
+			} else {
+				setWindow(cluster);
+				segment = WideAStar.compute(window, fromX, fromY, toX, toY,
+						workspace);
+			}
+			segments.add(segment);
+			length += segment.length - 1;
+		}
+		int[] path = new int[length];
+		path[0] = cellOfNode[abstractPath[0]];
+		int position = 1;
+		for (int[] segment : segments) {
+			System.arraycopy(segment, 1, path, position, segment.length - 1);
+			position += segment.length - 1;
+		}
+		return path;
+	}
+
+	private int clusterOf(int x, int y) {
+		return (x / clusterSize) * clustersY + y / clusterSize;
+	}
+
+	/**
+	 * Restricts the window to the given cluster.
+	 */
+	private void setWindow(int cluster) {
+		int minX = (cluster / clustersY) * clusterSize;
+		int minY = (cluster % clustersY) * clusterSize;
+		window.set(minX, minY, minX + clusterSize - 1, minY + clusterSize - 1);
+	}
+
+	private static int[] copyOf(int[] array, int length) {
+		int[] result = new int[length];
+		System.arraycopy(array, 0, result, 0, Math.min(array.length, length));
+		return result;
+	}
+}
@@ -0,0 +1,224 @@
+/**
+ * Binary min heap of cell indices. Unlike BucketQueue.java the keys are not
+ * limited to bytes. The heap knows the position of every cell, so the key of a
+ * queued cell can be changed (decrease key) in O(log n) instead of searching
+ * the cell first.
+ *
+ * @author Johannes
+ *
+ */
+public class IndexedHeap {
+
+	/**
+	 * Marks a cell that is currently not in the heap
+	 */
+	static final int NOT_QUEUED = -1;
+
+	/**
+	 * Cells ordered as binary heap
+	 */
+	int[] heap;
+
+	/**
+	 * Position of every cell in heap or NOT_QUEUED
+	 */
+	int[] positions;
+
+	/**
+	 * Key of every queued cell
+	 */
+	double[] keys;
+
+	/**
+	 * Number of queued cells
+	 */
+	int size;
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity
+	 *            Cells are indexed from 0 to capacity - 1
+	 */
+	public IndexedHeap(int capacity) {
+		heap = new int[capacity];
+		positions = new int[capacity];
+		keys = new double[capacity];
+		for (int i = 0; i < capacity; i++) {
+			positions[i] = NOT_QUEUED;
+		}
+	}
+
+	/**
+	 * Removes all cells from the heap. This only takes time proportional to
+	 * the number of queued cells.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			positions[heap[i]] = NOT_QUEUED;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Adds the cell with the given key. If the cell is already queued, its key
+	 * is changed.
+	 *
+	 * @param cell
+	 * @param key
+	 */
+	public void add(int cell, double key) {
+		int position = positions[cell];
+		if (position == NOT_QUEUED) {
+			position = size++;
+			heap[position] = cell;
+			positions[cell] = position;
+			keys[cell] = key;
+			siftUp(position);
+		} else {
+			double previous = keys[cell];
+			keys[cell] = key;
+			if (key < previous) {
+				siftUp(position);
+			} else {
+				siftDown(position);
+			}
+		}
+	}
+
+	/**
+	 * Removes the cell with the smallest key.
+	 *
+	 * @return Index of the removed cell or -1, if the heap is empty
+	 */
+	public int removeMinimum() {
+		if (size == 0) {
+			return NOT_QUEUED;
+		}
+		int cell = heap[0];
+		removeAt(0);
+		return cell;
+	}
+
+	/**
+	 * Removes the cell from the heap if it is queued.
+	 *
+	 * @param cell
+	 */
+	public void remove(int cell) {
+		if (contains(cell)) {
+			removeAt(positions[cell]);
+		}
+	}
+
+	/**
+	 * Returns the cell with the smallest key without removing it.
+	 *
+	 * @return Index of the cell or -1, if the heap is empty
+	 */
+	public int peekMinimum() {
+		return size == 0 ? NOT_QUEUED : heap[0];
+	}
+
+	/**
+	 * Returns the smallest key.
+	 *
+	 * @return Double.POSITIVE_INFINITY if the heap is empty
+	 */
+	public double peekMinimumKey() {
+		return size == 0 ? Double.POSITIVE_INFINITY : keys[heap[0]];
+	}
+
+	public boolean contains(int cell) {
+		return positions[cell] != NOT_QUEUED;
+	}
+
+	/**
+	 * Returns the key of a queued cell.
+	 *
+	 * @param cell
+	 * @return
+	 */
+	public double getKey(int cell) {
+		return keys[cell];
+	}
+
+	/**
+	 * Returns the i-th queued cell (in no particular order).
+	 *
+	 * @param i
+	 *            Between 0 and size() - 1
+	 * @return
+	 */
+	public int get(int i) {
+		return heap[i];
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return positions.length;
+	}
+
+	private void removeAt(int position) {
+		int cell = heap[position];
+		positions[cell] = NOT_QUEUED;
+		size--;
+		if (position < size) {
+			int last = heap[size];
+			heap[position] = last;
+			positions[last] = position;
+			if (keys[last] < keys[cell]) {
+				siftUp(position);
+			} else {
+				siftDown(position);
+			}
+		}
+	}
+
+	private void siftUp(int position) {
+		int cell = heap[position];
+		double key = keys[cell];
+		while (position > 0) {
+			int parent = (position - 1) / 2;
+			int parentCell = heap[parent];
+			if (keys[parentCell] <= key) {
+				break;
+			}
+			heap[position] = parentCell;
+			positions[parentCell] = position;
+			position = parent;
+		}
+		heap[position] = cell;
+		positions[cell] = position;
+	}
+
+	private void siftDown(int position) {
+		int cell = heap[position];
+		double key = keys[cell];
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+				child++;
+			}
+			int childCell = heap[child];
+			if (keys[childCell] >= key) {
+				break;
+			}
+			heap[position] = childCell;
+			positions[childCell] = position;
+			position = child;
+		}
+		heap[position] = cell;
+		positions[cell] = position;
+	}
+}
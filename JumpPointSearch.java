@@ -0,0 +1,254 @@
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Jump point search, a variant of AStar.java for grids with uniform costs.
+ * Instead of adding every neighbor to the open set, the search "jumps" along
+ * straight and diagonal lines and only adds cells where the optimal path might
+ * change its direction (jump points). On maps that mostly consist of open
+ * floor, this saves most of the expansions A* does for the many symmetric
+ * paths of equal length.
+ *
+ * The costs are the same as in AStar.java (1 for straight, 2 for diagonal
+ * moves) and so is the result: every cell of the path from start to goal.
+ *
+ * @author Johannes
+ *
+ */
+public final class JumpPointSearch {
+
+	/**
+	 * Directions to expand to from the start, which has no parent.
+	 */
+	static final int[][] ALL_DIRECTIONS = { { -1, -1 }, { -1, 0 }, { -1, 1 },
+			{ 0, -1 }, { 0, 1 }, { 1, -1 }, { 1, 0 }, { 1, 1 } };
+
+	/**
+	 * Runs jump point search with euclidean distance as heuristics function.
+	 * Only points that are valid in the given surrounding and that have more
+	 * than minDistance to any wall or obstacle are considered.
+	 *
+	 * @param surrounding
+	 * @param minDistance
+	 * @return Path or null, if no path found
+	 */
+	public static List<BytePoint> compute(Surrounding surrounding,
+			int minDistance) {
+		BytePoint start = surrounding.getStart();
+		BytePoint goal = surrounding.getGoal();
+		ClearanceMap clearance = surrounding.getClearanceMap(minDistance);
+
+		BooleanMap closedSet = surrounding.toBooleanMap();
+		BucketQueue openSet = new BucketQueue(closedSet.getWidth()
+				* closedSet.getHeight());
+
+		// See AStar.java. The cell a jump point was reached from is the
+		// previous jump point, so the direction of the jump is known as well.
+		ByteMap cameFromX = new ByteMap(closedSet.getWidth(),
+				closedSet.getHeight());
+		ByteMap cameFromY = new ByteMap(closedSet.getWidth(),
+				closedSet.getHeight());
+		cameFromX.setAll(Byte.MIN_VALUE);
+		cameFromY.setAll(Byte.MIN_VALUE);
+
+		// G scores are "simulated" unsigned (0 - 255), as are the f scores in
+		// the open set.
+		ByteMap gScores = new ByteMap(closedSet.getWidth(),
+				closedSet.getHeight());
+
+		openSet.add(index(closedSet, start.getX(), start.getY()),
+				fScore(0, start.getX(), start.getY(), goal));
+
+		int[] directionsX = new int[ALL_DIRECTIONS.length];
+		int[] directionsY = new int[ALL_DIRECTIONS.length];
+		while (!openSet.isEmpty()) {
+			int cell = openSet.removeMinimum();
+			byte x = (byte) (cell / closedSet.getHeight());
+			byte y = (byte) (cell % closedSet.getHeight());
+			if (x == goal.getX() && y == goal.getY()) {
+				return reconstructPath(cameFromX, cameFromY, goal);
+			}
+			closedSet.set(x, y, true);
+			int gScore = gScores.get(x, y) & 0xFF;
+
+			int count = prunedDirections(clearance, x, y, cameFromX.get(x, y),
+					cameFromY.get(x, y), directionsX, directionsY);
+			for (int i = 0; i < count; i++) {
+				int dx = directionsX[i];
+				int dy = directionsY[i];
+				int jumpPoint = jump(clearance, x, y, dx, dy, goal);
+				if (jumpPoint < 0) {
+					continue;
+				}
+				byte jumpX = (byte) (jumpPoint / closedSet.getHeight());
+				byte jumpY = (byte) (jumpPoint % closedSet.getHeight());
+				if (closedSet.get(jumpX, jumpY)) {
+					continue;
+				}
+
+				// Jumps are either straight or diagonal, diagonal moves have
+				// cost 2
+				int steps = Math.max(Math.abs(jumpX - x), Math.abs(jumpY - y));
+				int tentativeGScore = gScore + (dx != 0 && dy != 0 ? 2 : 1)
+						* steps;
+				if (tentativeGScore > 255) {
+					// Does not fit into the map, see TODO in AStar.java
+					continue;
+				}
+				if (!openSet.contains(jumpPoint)
+						|| tentativeGScore < (gScores.get(jumpX, jumpY) & 0xFF)) {
+					cameFromX.set(jumpX, jumpY, x);
+					cameFromY.set(jumpX, jumpY, y);
+					gScores.set(jumpX, jumpY, (byte) tentativeGScore);
+					openSet.add(jumpPoint,
+							fScore(tentativeGScore, jumpX, jumpY, goal));
+				}
+			}
+		}
+		// No more positions in openSet, no path found
+		return null;
+	}
+
+	/**
+	 * Determines in which directions the search continues from (x,y). The
+	 * start expands in all directions, every other cell only in the direction
+	 * it was reached from and towards its forced neighbors (neighbors that
+	 * only become reachable because an obstacle ends next to (x,y)).
+	 *
+	 * @return Number of directions written into directionsX and directionsY
+	 */
+	private static int prunedDirections(ClearanceMap clearance, int x, int y,
+			byte parentX, byte parentY, int[] directionsX, int[] directionsY) {
+		if (parentX == Byte.MIN_VALUE || parentY == Byte.MIN_VALUE) {
+			for (int i = 0; i < ALL_DIRECTIONS.length; i++) {
+				directionsX[i] = ALL_DIRECTIONS[i][0];
+				directionsY[i] = ALL_DIRECTIONS[i][1];
+			}
+			return ALL_DIRECTIONS.length;
+		}
+		int dx = Integer.signum(x - parentX);
+		int dy = Integer.signum(y - parentY);
+		int count = 0;
+		if (dx != 0 && dy != 0) {
+			count = add(directionsX, directionsY, count, dx, dy);
+			count = add(directionsX, directionsY, count, dx, 0);
+			count = add(directionsX, directionsY, count, 0, dy);
+			if (!clearance.isPassable(x - dx, y)) {
+				count = add(directionsX, directionsY, count, -dx, dy);
+			}
+			if (!clearance.isPassable(x, y - dy)) {
+				count = add(directionsX, directionsY, count, dx, -dy);
+			}
+		} else if (dx != 0) {
+			count = add(directionsX, directionsY, count, dx, 0);
+			if (!clearance.isPassable(x, y + 1)) {
+				count = add(directionsX, directionsY, count, dx, 1);
+			}
+			if (!clearance.isPassable(x, y - 1)) {
+				count = add(directionsX, directionsY, count, dx, -1);
+			}
+		} else {
+			count = add(directionsX, directionsY, count, 0, dy);
+			if (!clearance.isPassable(x + 1, y)) {
+				count = add(directionsX, directionsY, count, 1, dy);
+			}
+			if (!clearance.isPassable(x - 1, y)) {
+				count = add(directionsX, directionsY, count, -1, dy);
+			}
+		}
+		return count;
+	}
+
+	private static int add(int[] directionsX, int[] directionsY, int count,
+			int dx, int dy) {
+		directionsX[count] = dx;
+		directionsY[count] = dy;
+		return count + 1;
+	}
+
+	/**
+	 * Walks from (x,y) into direction (dx,dy) until a jump point is found.
+	 * That is the goal, a cell with a forced neighbor or (for diagonal moves)
+	 * a cell from which a straight jump finds a jump point.
+	 *
+	 * @return Index of the jump point or -1 if the walk hits a blocked cell
+	 */
+	private static int jump(ClearanceMap clearance, int x, int y, int dx,
+			int dy, BytePoint goal) {
+		while (true) {
+			x += dx;
+			y += dy;
+			if (!clearance.isPassable(x, y)) {
+				return -1;
+			}
+			if (x == goal.getX() && y == goal.getY()) {
+				return x * clearance.getHeight() + y;
+			}
+			if (dx != 0 && dy != 0) {
+				if (!clearance.isPassable(x - dx, y)
+						&& clearance.isPassable(x - dx, y + dy)
+						|| !clearance.isPassable(x, y - dy)
+						&& clearance.isPassable(x + dx, y - dy)) {
+					return x * clearance.getHeight() + y;
+				}
+				// Diagonal moves stop where a straight move would find
+				// something
+				if (jump(clearance, x, y, dx, 0, goal) >= 0
+						|| jump(clearance, x, y, 0, dy, goal) >= 0) {
+					return x * clearance.getHeight() + y;
+				}
+			} else if (dx != 0) {
+				if (!clearance.isPassable(x, y + 1)
+						&& clearance.isPassable(x + dx, y + 1)
+						|| !clearance.isPassable(x, y - 1)
+						&& clearance.isPassable(x + dx, y - 1)) {
+					return x * clearance.getHeight() + y;
+				}
+			} else {
+				if (!clearance.isPassable(x + 1, y)
+						&& clearance.isPassable(x + 1, y + dy)
+						|| !clearance.isPassable(x - 1, y)
+						&& clearance.isPassable(x - 1, y + dy)) {
+					return x * clearance.getHeight() + y;
+				}
+			}
+		}
+	}
+
+	private static int index(BooleanMap map, byte x, byte y) {
+		return x * map.getHeight() + y;
+	}
+
+	/**
+	 * F score as priority of the open set (0 - 255)
+	 */
+	private static int fScore(int gScore, byte x, byte y, BytePoint goal) {
+		return Math.min(255,
+				gScore + (int) Geometry.euclideanDist(goal, x, y));
+	}
+
+	/**
+	 * Reconstructs the path by walking back from jump point to jump point and
+	 * adding every cell in between.
+	 */
+	private static List<BytePoint> reconstructPath(ByteMap cameFromX,
+			ByteMap cameFromY, BytePoint goal) {
+		LinkedList<BytePoint> result = new LinkedList<BytePoint>();
+		result.addFirst(goal);
+		byte x = goal.getX();
+		byte y = goal.getY();
+		while (cameFromX.get(x, y) != Byte.MIN_VALUE
+				&& cameFromY.get(x, y) != Byte.MIN_VALUE) {
+			byte parentX = cameFromX.get(x, y);
+			byte parentY = cameFromY.get(x, y);
+			int dx = Integer.signum(parentX - x);
+			int dy = Integer.signum(parentY - y);
+			while (x != parentX || y != parentY) {
+				x += dx;
+				y += dy;
+				result.addFirst(new BytePoint(x, y));
+			}
+		}
+		return result;
+	}
+}
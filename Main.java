@@ -1,5 +1,4 @@
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 import lejos.util.Delay;
@@ -37,6 +36,16 @@ public class Main {
 		ParticleFilter particleFilter = new ParticleFilter(particles);
 		s("Initialising virtual sensor");
 		UltrasonicSensor sensor = new UltrasonicSensor(surrounding);
+		if (Constants.USE_RANGE_TABLE) {
+			s("Calculating range table");
+			sensor.setRangeTable(new RangeTable(surrounding,
+					Constants.RANGE_TABLE_HEADING_BINS));
+		}
+		OccupancyGrid occupancyGrid = null;
+		if (Constants.OCCUPANCY_MAPPING) {
+			occupancyGrid = new OccupancyGrid(surrounding.getWidth(),
+					surrounding.getHeight());
+		}
 
 		// Keep reference to referenceCar to not always trigger a calculation
 		// when accessing it
@@ -71,6 +80,14 @@ public class Main {
 			particleFilter.resample(referenceCar, sensor);
 			sv("Calculating new belief");
 			referenceCar = particleFilter.getReferenceCar();
+
+			if (occupancyGrid != null) {
+				sv("Updating occupancy grid");
+				occupancyGrid.updateFront(referenceCar,
+						particleFilter.getLastFront());
+				occupancyGrid.updateBack(referenceCar,
+						particleFilter.getLastBack());
+			}
 		}
 
 		s("Reached goal, terminating...");
@@ -93,51 +110,36 @@ public class Main {
 	}
 
 	private static List<ByteLine> getPath(Surrounding surrounding) {
-		if (!Constants.USE_PRECALCULATED_PATH) {
+		if (!Constants.USE_PATH_CACHE) {
 			sv("Computing path");
 			return computePath(surrounding);
-		} else {
-			sv("Using precalculated path");
-			return getPreCalculatedPath();
 		}
-	}
-
-	private static List<ByteLine> getPreCalculatedPath() {
-		// TODO: Run the program locally and put the result after Douglas
-		// Peucker here.
-		List<ByteLine> lines = new LinkedList<ByteLine>();
-		lines.add(new ByteLine(new BytePoint((byte) 28, (byte) 8),
-				new BytePoint((byte) 19, (byte) 9)));
-		lines.add(new ByteLine(new BytePoint((byte) 19, (byte) 9),
-				new BytePoint((byte) 18, (byte) 57)));
-		lines.add(new ByteLine(new BytePoint((byte) 18, (byte) 57),
-				new BytePoint((byte) 19, (byte) 65)));
-		lines.add(new ByteLine(new BytePoint((byte) 19, (byte) 65),
-				new BytePoint((byte) 28, (byte) 74)));
-		lines.add(new ByteLine(new BytePoint((byte) 28, (byte) 74),
-				new BytePoint((byte) 30, (byte) 79)));
-		lines.add(new ByteLine(new BytePoint((byte) 30, (byte) 79),
-				new BytePoint((byte) 26, (byte) 85)));
-		lines.add(new ByteLine(new BytePoint((byte) 26, (byte) 85),
-				new BytePoint((byte) 18, (byte) 87)));
-		lines.add(new ByteLine(new BytePoint((byte) 18, (byte) 87),
-				new BytePoint((byte) 16, (byte) 95)));
-		lines.add(new ByteLine(new BytePoint((byte) 16, (byte) 95),
-				new BytePoint((byte) 9, (byte) 99)));
-		lines.add(new ByteLine(new BytePoint((byte) 9, (byte) 99),
-				new BytePoint((byte) 8, (byte) 104)));
-		lines.add(new ByteLine(new BytePoint((byte) 8, (byte) 104),
-				new BytePoint((byte) 6, (byte) 106)));
+		int key = PathCache.key(surrounding);
+		List<ByteLine> lines = PathCache.load(key);
+		if (lines != null) {
+			sv("Using cached path");
+			return lines;
+		}
+		sv("Computing path");
+		lines = computePath(surrounding);
+		if (!PathPlanner.isLastPathFinal()) {
+			sv("Path not cached, it is not optimal yet");
+		} else if (!PathCache.store(key, lines)) {
+			sv("Couldn't cache path");
+		}
 		return lines;
 	}
 
 	private static List<ByteLine> computePath(Surrounding surrounding) {
-		List<BytePoint> points = aStar(surrounding);
-		sv("A*");
-		sv(points);
-		points = douglasPeucker(points);
-		sv("Douglas Peucker");
+		List<BytePoint> points = planPath(surrounding);
+		sv(Constants.PLANNER_MODE);
 		sv(points);
+		if (Constants.PLANNER_MODE != PlannerMode.THETA_STAR) {
+			// Any-angle paths already consist of long straight lines
+			points = douglasPeucker(points);
+			sv("Douglas Peucker");
+			sv(points);
+		}
 		return linify(points);
 	}
 
@@ -155,9 +157,9 @@ public class Main {
 		return points;
 	}
 
-	private static List<BytePoint> aStar(Surrounding surrounding) {
-		List<BytePoint> points = AStar.compute(surrounding,
-				Constants.MIN_DISTANCE);
+	private static List<BytePoint> planPath(Surrounding surrounding) {
+		List<BytePoint> points = PathPlanner.compute(surrounding,
+				Constants.MIN_DISTANCE, Constants.PLANNER_MODE);
 		if (points == null) {
 			throw new IllegalArgumentException("Couldn't find path!");
 		}
@@ -0,0 +1,328 @@
+/**
+ * Uniform bucket grid over the obstacles of a surrounding. Every bucket knows
+ * the obstacles that overlap it, so the closest obstacle to a point is found
+ * by searching the buckets in rings around the point, and the search stops as
+ * soon as no obstacle in a further ring can be closer. The cost of a query
+ * therefore depends on the number of obstacles close to the point and not on
+ * the number of all obstacles.
+ *
+ * Like BucketQueue.java the lists of the buckets are kept in arrays, so adding
+ * an obstacle does not create any objects.
+ *
+ * @author Johannes
+ *
+ */
+public class ObstacleIndex {
+
+	/**
+	 * Marks the end of a bucket list
+	 */
+	static final int NONE = -1;
+
+	int width;
+	int height;
+
+	/**
+	 * Width and height of a bucket
+	 */
+	int bucketSize;
+	int bucketsX;
+	int bucketsY;
+
+	/**
+	 * Bounds of every obstacle (inclusive)
+	 */
+	byte[] xMin;
+	byte[] xMax;
+	byte[] yMin;
+	byte[] yMax;
+	int count;
+
+	/**
+	 * First entry of every bucket or NONE
+	 */
+	int[] heads;
+
+	/**
+	 * Obstacle and next entry of every entry of a bucket list
+	 */
+	int[] entryObstacles;
+	int[] entryNext;
+	int entryCount;
+
+	/**
+	 * Query in which an obstacle was last measured, so obstacles that overlap
+	 * several buckets are only measured once per query
+	 */
+	int[] visited;
+	int query;
+
+	/**
+	 * Constructor
+	 *
+	 * @param width
+	 *            Width of the map
+	 * @param height
+	 *            Height of the map
+	 * @param bucketSize
+	 *            Width and height of a bucket
+	 */
+	public ObstacleIndex(int width, int height, int bucketSize) {
+		if (bucketSize < 1) {
+			throw new IllegalArgumentException("bucketSize must be positive");
+		}
+		this.width = width;
+		this.height = height;
+		this.bucketSize = bucketSize;
+		this.bucketsX = Math.max(1, (width + bucketSize - 1) / bucketSize);
+		this.bucketsY = Math.max(1, (height + bucketSize - 1) / bucketSize);
+		this.heads = new int[bucketsX * bucketsY];
+		for (int i = 0; i < heads.length; i++) {
+			heads[i] = NONE;
+		}
+		this.xMin = new byte[4];
+		this.xMax = new byte[4];
+		this.yMin = new byte[4];
+		this.yMax = new byte[4];
+		this.visited = new int[4];
+		this.entryObstacles = new int[16];
+		this.entryNext = new int[16];
+	}
+
+	/**
+	 * Adds an obstacle. Obstacles (partly) outside the map are added to the
+	 * buckets at the border.
+	 *
+	 * @param obstacle
+	 */
+	public void add(ByteRectangle obstacle) {
+		BytePoint lowLeft = obstacle.getLowerLeftCorner();
+		BytePoint upRight = obstacle.getUpperRightCorner();
+		if (count == xMin.length) {
+			xMin = grow(xMin);
+			xMax = grow(xMax);
+			yMin = grow(yMin);
+			yMax = grow(yMax);
+			int[] newVisited = new int[2 * count];
+			System.arraycopy(visited, 0, newVisited, 0, count);
+			visited = newVisited;
+		}
+		int id = count++;
+		xMin[id] = lowLeft.getX();
+		xMax[id] = upRight.getX();
+		yMin[id] = lowLeft.getY();
+		yMax[id] = upRight.getY();
+		visited[id] = query;
+
+		for (int bx = bucketX(xMin[id]); bx <= bucketX(xMax[id]); bx++) {
+			for (int by = bucketY(yMin[id]); by <= bucketY(yMax[id]); by++) {
+				if (entryCount == entryObstacles.length) {
+					int[] newObstacles = new int[2 * entryCount];
+					int[] newNext = new int[2 * entryCount];
+					System.arraycopy(entryObstacles, 0, newObstacles, 0,
+							entryCount);
+					System.arraycopy(entryNext, 0, newNext, 0, entryCount);
+					entryObstacles = newObstacles;
+					entryNext = newNext;
+				}
+				int bucket = bx * bucketsY + by;
+				entryObstacles[entryCount] = id;
+				entryNext[entryCount] = heads[bucket];
+				heads[bucket] = entryCount++;
+			}
+		}
+	}
+
+	/**
+	 * Euclidean distance from (x,y) to the closest obstacle. Points inside an
+	 * obstacle have distance 0.
+	 *
+	 * @param x
+	 * @param y
+	 * @return Double.MAX_VALUE if there are no obstacles
+	 */
+	public double distance(int x, int y) {
+		query++;
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			// The rings only give a bound for points inside the map
+			double min = Double.MAX_VALUE;
+			for (int id = 0; id < count; id++) {
+				min = Math.min(min, distance(id, x, y));
+			}
+			return min;
+		}
+		int centerX = x / bucketSize;
+		int centerY = y / bucketSize;
+		int maxRing = Math.max(Math.max(centerX, bucketsX - 1 - centerX),
+				Math.max(centerY, bucketsY - 1 - centerY));
+		double min = Double.MAX_VALUE;
+		for (int ring = 0; ring <= maxRing; ring++) {
+			// Every point in ring r is more than (r - 1) * bucketSize away
+			if (min <= (ring - 1) * bucketSize) {
+				break;
+			}
+			for (int bx = centerX - ring; bx <= centerX + ring; bx++) {
+				if (bx < 0 || bx >= bucketsX) {
+					continue;
+				}
+				// Inner columns only have the top and bottom bucket in the ring
+				int step = bx == centerX - ring || bx == centerX + ring ? 1
+						: 2 * ring;
+				for (int by = centerY - ring; by <= centerY + ring; by += step) {
+					if (by >= 0 && by < bucketsY) {
+						min = Math.min(min, distance(bx * bucketsY + by, x, y,
+								min));
+					}
+				}
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * Distance along the ray from (x,y) in direction (dx,dy) to the first
+	 * obstacle, calculated exactly with slab tests. The buckets are visited in
+	 * the order the ray crosses them (like Surrounding.castRay), and the
+	 * search stops as soon as an obstacle is hit before the ray leaves the
+	 * current bucket.
+	 *
+	 * @param x
+	 * @param y
+	 * @param dx
+	 *            Direction, normalized
+	 * @param dy
+	 *            Direction, normalized
+	 * @param maxDistance
+	 * @return 0 if (x,y) lies inside an obstacle, at most maxDistance
+	 */
+	public double rayIntersection(double x, double y, double dx, double dy,
+			double maxDistance) {
+		query++;
+		double min = maxDistance;
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			// Buckets are only crossed in order inside the map
+			for (int id = 0; id < count; id++) {
+				min = Math.min(min, rayIntersection(id, x, y, dx, dy));
+			}
+			return min;
+		}
+		int bx = (int) x / bucketSize;
+		int by = (int) y / bucketSize;
+		int stepX = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+		int stepY = dy > 0 ? 1 : dy < 0 ? -1 : 0;
+		double deltaX = stepX == 0 ? Double.POSITIVE_INFINITY : bucketSize
+				/ Math.abs(dx);
+		double deltaY = stepY == 0 ? Double.POSITIVE_INFINITY : bucketSize
+				/ Math.abs(dy);
+		double nextX = stepX == 0 ? Double.POSITIVE_INFINITY
+				: ((stepX > 0 ? bx + 1 : bx) * bucketSize - x) / dx;
+		double nextY = stepY == 0 ? Double.POSITIVE_INFINITY
+				: ((stepY > 0 ? by + 1 : by) * bucketSize - y) / dy;
+		while (bx >= 0 && by >= 0 && bx < bucketsX && by < bucketsY) {
+			min = rayIntersection(bx * bucketsY + by, x, y, dx, dy, min);
+			double exit = Math.min(nextX, nextY);
+			if (min <= exit) {
+				break;
+			}
+			if (nextX < nextY) {
+				nextX += deltaX;
+				bx += stepX;
+			} else {
+				nextY += deltaY;
+				by += stepY;
+			}
+		}
+		return min;
+	}
+
+	public int getObstacleCount() {
+		return count;
+	}
+
+	/**
+	 * Smallest distance of all obstacles in the bucket that were not measured
+	 * in this query yet
+	 */
+	private double distance(int bucket, int x, int y, double min) {
+		for (int entry = heads[bucket]; entry != NONE; entry = entryNext[entry]) {
+			int id = entryObstacles[entry];
+			if (visited[id] != query) {
+				visited[id] = query;
+				min = Math.min(min, distance(id, x, y));
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * Smallest ray distance of all obstacles in the bucket that were not
+	 * tested in this query yet
+	 */
+	private double rayIntersection(int bucket, double x, double y, double dx,
+			double dy, double min) {
+		for (int entry = heads[bucket]; entry != NONE; entry = entryNext[entry]) {
+			int id = entryObstacles[entry];
+			if (visited[id] != query) {
+				visited[id] = query;
+				min = Math.min(min, rayIntersection(id, x, y, dx, dy));
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * Slab test: the ray is inside the obstacle between the distances where
+	 * it is inside both its x and its y bounds.
+	 *
+	 * @return Double.POSITIVE_INFINITY if the ray misses the obstacle
+	 */
+	private double rayIntersection(int id, double x, double y, double dx,
+			double dy) {
+		double near = 0;
+		double far = Double.POSITIVE_INFINITY;
+		if (dx == 0) {
+			if (x < xMin[id] || x > xMax[id]) {
+				return Double.POSITIVE_INFINITY;
+			}
+		} else {
+			double t1 = (xMin[id] - x) / dx;
+			double t2 = (xMax[id] - x) / dx;
+			near = Math.max(near, Math.min(t1, t2));
+			far = Math.min(far, Math.max(t1, t2));
+		}
+		if (dy == 0) {
+			if (y < yMin[id] || y > yMax[id]) {
+				return Double.POSITIVE_INFINITY;
+			}
+		} else {
+			double t1 = (yMin[id] - y) / dy;
+			double t2 = (yMax[id] - y) / dy;
+			near = Math.max(near, Math.min(t1, t2));
+			far = Math.min(far, Math.max(t1, t2));
+		}
+		return near <= far ? near : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Same as the distance of a point to a rectangle in Surrounding.java
+	 */
+	private double distance(int id, int x, int y) {
+		int dx = Math.max(0, Math.max(xMin[id] - x, x - xMax[id]));
+		int dy = Math.max(0, Math.max(yMin[id] - y, y - yMax[id]));
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	private int bucketX(int x) {
+		return Math.min(Math.max(x, 0), width - 1) / bucketSize;
+	}
+
+	private int bucketY(int y) {
+		return Math.min(Math.max(y, 0), height - 1) / bucketSize;
+	}
+
+	private static byte[] grow(byte[] array) {
+		byte[] result = new byte[2 * array.length];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+}
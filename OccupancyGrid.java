@@ -0,0 +1,240 @@
+/**
+ * Map that is learned from the ultrasonic sensors while driving, unlike
+ * Surrounding.java which is given up front. Every cell holds the log odds of
+ * being occupied, 0 means unknown. Every measurement is turned into a cone
+ * (inverse sensor model): cells in the cone closer than the measured distance
+ * become more likely free, cells at the measured distance more likely
+ * occupied, cells behind stay as they are.
+ *
+ * Log odds are bytes that saturate at Constants.OccupancyGrid.LOG_ODDS_MIN and
+ * LOG_ODDS_MAX, so an update does not create any objects and the whole grid
+ * costs one byte per cell.
+ *
+ * @author Johannes
+ *
+ */
+public class OccupancyGrid {
+
+	int width;
+	int height;
+
+	/**
+	 * Log odds of cell (x,y) at x * height + y
+	 */
+	byte[] logOdds;
+
+	/**
+	 * Creates a grid in which every cell is unknown.
+	 *
+	 * @param width
+	 * @param height
+	 */
+	public OccupancyGrid(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.logOdds = new byte[width * height];
+	}
+
+	/**
+	 * Updates the grid with a measurement of the front sensor.
+	 *
+	 * @param car
+	 *            Believed pose of the robot
+	 * @param measure
+	 *            In cm, as returned by Robot.measureFront
+	 */
+	public void updateFront(Car car, int measure) {
+		update(car, RobotKnowledge.FRONT_SENSOR_MOUNT_OFFSET,
+				RobotKnowledge.FRONT_SENSOR_SECTOR_DEGREES, measure);
+	}
+
+	/**
+	 * Updates the grid with a measurement of the back sensor.
+	 *
+	 * @param car
+	 *            Believed pose of the robot
+	 * @param measure
+	 *            In cm, as returned by Robot.measureBack
+	 */
+	public void updateBack(Car car, int measure) {
+		update(car, RobotKnowledge.BACK_SENSOR_MOUNT_OFFSET,
+				RobotKnowledge.BACK_SENSOR_SECTOR_DEGREES, measure);
+	}
+
+	/**
+	 * Updates all cells in the cone of a measurement.
+	 *
+	 * @param sensorX
+	 *            Position of the sensor
+	 * @param sensorY
+	 *            Position of the sensor
+	 * @param directionX
+	 *            Direction of the sensor (normalized)
+	 * @param directionY
+	 *            Direction of the sensor (normalized)
+	 * @param openingDegrees
+	 *            Opening angle of the cone
+	 * @param distance
+	 *            Measured distance (1 ^= 5cm)
+	 * @param hit
+	 *            false if nothing was recognized, then the whole cone up to
+	 *            distance is free
+	 */
+	public void update(double sensorX, double sensorY, double directionX,
+			double directionY, int openingDegrees, double distance,
+			boolean hit) {
+		double thickness = Constants.OccupancyGrid.HIT_THICKNESS;
+		double cosHalfOpening = Math.cos(Math.toRadians(openingDegrees) / 2);
+		double cosSquared = cosHalfOpening * cosHalfOpening;
+		double freeSquared = Math.max(distance - thickness, 0);
+		freeSquared *= freeSquared;
+		double reach = hit ? distance + thickness : distance;
+		double reachSquared = reach * reach;
+
+		int xMin = Math.max(0, (int) Math.floor(sensorX - reach));
+		int xMax = Math.min(width - 1, (int) Math.ceil(sensorX + reach));
+		int yMin = Math.max(0, (int) Math.floor(sensorY - reach));
+		int yMax = Math.min(height - 1, (int) Math.ceil(sensorY + reach));
+		for (int x = xMin; x <= xMax; x++) {
+			double dx = x - sensorX;
+			for (int y = yMin; y <= yMax; y++) {
+				double dy = y - sensorY;
+				double distanceSquared = dx * dx + dy * dy;
+				if (distanceSquared > reachSquared) {
+					continue;
+				}
+				// Inside the cone if the angle to the direction is at most
+				// half the opening: dot >= |d| * cos, squared to save the root
+				double dot = dx * directionX + dy * directionY;
+				if (distanceSquared > 0
+						&& (dot < 0 || dot * dot < distanceSquared * cosSquared)) {
+					continue;
+				}
+				if (distanceSquared < freeSquared || !hit) {
+					add(x * height + y, Constants.OccupancyGrid.LOG_ODDS_FREE);
+				} else {
+					add(x * height + y,
+							Constants.OccupancyGrid.LOG_ODDS_OCCUPIED);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Log odds of (x,y) being occupied.
+	 *
+	 * @param x
+	 *            Must be valid
+	 * @param y
+	 *            Must be valid
+	 * @return Positive if rather occupied, negative if rather free, 0 if
+	 *         unknown
+	 */
+	public byte getLogOdds(int x, int y) {
+		return logOdds[x * height + y];
+	}
+
+	/**
+	 * Probability of (x,y) being occupied.
+	 *
+	 * @param x
+	 *            Must be valid
+	 * @param y
+	 *            Must be valid
+	 * @return
+	 */
+	public double getProbability(int x, int y) {
+		double odds = Math.exp((double) getLogOdds(x, y)
+				/ Constants.OccupancyGrid.LOG_ODDS_SCALE);
+		return odds / (1 + odds);
+	}
+
+	/**
+	 * Checks if (x,y) is believed to be occupied.
+	 *
+	 * @param x
+	 * @param y
+	 * @return false if (x,y) is not valid
+	 */
+	public boolean isOccupied(int x, int y) {
+		return isValid(x, y)
+				&& getLogOdds(x, y) >= Constants.OccupancyGrid.OCCUPIED_THRESHOLD;
+	}
+
+	public boolean isValid(int x, int y) {
+		return !(x < 0 || y < 0 || x >= width || y >= height);
+	}
+
+	/**
+	 * Sets all cells back to unknown.
+	 */
+	public void clear() {
+		for (int i = 0; i < logOdds.length; i++) {
+			logOdds[i] = 0;
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				byte value = logOdds[x * height + y];
+				builder.append(value >= Constants.OccupancyGrid.OCCUPIED_THRESHOLD ? "X"
+						: value < 0 ? "." : "?");
+			}
+			builder.append("\n");
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Measurement of a sensor mounted at the given offset, with the same
+	 * geometry as RobotKnowledge.getFrontSensorLines: the sensor sits at the
+	 * rotated offset and points away from the robot.
+	 */
+	private void update(Car car, DoublePoint mountOffset, int openingDegrees,
+			int measure) {
+		State state = car.getState();
+		double theta = state.getHeading().get(AngleType.RADIANS);
+		double offsetX = mountOffset.getX() * Math.cos(theta)
+				+ mountOffset.getY() * Math.sin(theta);
+		double offsetY = -mountOffset.getX() * Math.sin(theta)
+				+ mountOffset.getY() * Math.cos(theta);
+		double length = Math.sqrt(offsetX * offsetX + offsetY * offsetY);
+		if (length == 0) {
+			return;
+		}
+		// Measures are in cm, the grid in units of 5cm
+		double distance = measure / 5.;
+		boolean hit = distance < RobotKnowledge.getMaxMeasure();
+		if (!hit) {
+			distance = RobotKnowledge.getMaxMeasure();
+		}
+		update(state.getPosition().getX() + offsetX, state.getPosition()
+				.getY() + offsetY, offsetX / length, offsetY / length,
+				openingDegrees, distance, hit);
+	}
+
+	/**
+	 * Adds to the log odds of a cell, saturating at LOG_ODDS_MIN and
+	 * LOG_ODDS_MAX instead of overflowing
+	 */
+	private void add(int cell, int value) {
+		int sum = logOdds[cell] + value;
+		if (sum > Constants.OccupancyGrid.LOG_ODDS_MAX) {
+			sum = Constants.OccupancyGrid.LOG_ODDS_MAX;
+		} else if (sum < Constants.OccupancyGrid.LOG_ODDS_MIN) {
+			sum = Constants.OccupancyGrid.LOG_ODDS_MIN;
+		}
+		logOdds[cell] = (byte) sum;
+	}
+}
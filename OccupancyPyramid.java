@@ -0,0 +1,190 @@
+/**
+ * Multi resolution view of the map (mip map / quadtree stored as levels). On
+ * level k every block of 2^k x 2^k cells is either FREE (all cells in the map
+ * and passable), OCCUPIED (all cells obstacles or outside the map) or MIXED.
+ * Level 0 are the cells themselves, the top level is one block covering the
+ * whole map.
+ *
+ * Queries walk from the top level down until they reach a block that is not
+ * MIXED, so big empty areas are answered after a few levels instead of cell by
+ * cell. E.g. castRay jumps over whole free blocks, and planners can check
+ * whole areas at once with getState.
+ *
+ * @author Johannes
+ *
+ */
+public class OccupancyPyramid {
+
+	public static final byte FREE = 0;
+	public static final byte OCCUPIED = 1;
+	public static final byte MIXED = 2;
+
+	/**
+	 * Added to the distance of a block border, so the next step starts in
+	 * the next block
+	 */
+	static final double EPSILON = 1e-9;
+
+	int width;
+	int height;
+
+	/**
+	 * Per level: true if any cell of a block is occupied or outside the map
+	 */
+	BooleanMap[] anyOccupied;
+
+	/**
+	 * Per level: true if all cells of a block are occupied or outside the map
+	 */
+	BooleanMap[] allOccupied;
+
+	/**
+	 * Builds the pyramid of a map.
+	 *
+	 * @param map
+	 *            True where obstacles are
+	 */
+	public OccupancyPyramid(BooleanMap map) {
+		this.width = map.getWidth();
+		this.height = map.getHeight();
+		int levels = 1;
+		while ((1 << levels - 1) < Math.max(width, height)) {
+			levels++;
+		}
+		anyOccupied = new BooleanMap[levels];
+		allOccupied = new BooleanMap[levels];
+		anyOccupied[0] = new BooleanMap(map);
+		allOccupied[0] = anyOccupied[0];
+		for (int level = 1; level < levels; level++) {
+			BooleanMap anyBelow = anyOccupied[level - 1];
+			BooleanMap allBelow = allOccupied[level - 1];
+			byte levelWidth = (byte) ((anyBelow.getWidth() + 1) / 2);
+			byte levelHeight = (byte) ((anyBelow.getHeight() + 1) / 2);
+			BooleanMap any = new BooleanMap(levelWidth, levelHeight);
+			BooleanMap all = new BooleanMap(levelWidth, levelHeight);
+			for (byte bx = 0; bx < levelWidth; bx++) {
+				for (byte by = 0; by < levelHeight; by++) {
+					boolean anyChild = false;
+					boolean allChildren = true;
+					for (int cx = 2 * bx; cx <= 2 * bx + 1; cx++) {
+						for (int cy = 2 * by; cy <= 2 * by + 1; cy++) {
+							if (cx >= anyBelow.getWidth()
+									|| cy >= anyBelow.getHeight()) {
+								// Outside the map
+								anyChild = true;
+							} else {
+								anyChild |= anyBelow.get((byte) cx, (byte) cy);
+								allChildren &= allBelow.get((byte) cx,
+										(byte) cy);
+							}
+						}
+					}
+					any.set(bx, by, anyChild);
+					all.set(bx, by, allChildren);
+				}
+			}
+			anyOccupied[level] = any;
+			allOccupied[level] = all;
+		}
+	}
+
+	/**
+	 * State of the block (bx,by) of the given level.
+	 *
+	 * @param level
+	 *            0 to getLevelCount() - 1
+	 * @param bx
+	 *            Block x, which covers the cells bx * 2^level to (bx + 1) *
+	 *            2^level - 1
+	 * @param by
+	 *            Block y
+	 * @return FREE, OCCUPIED or MIXED. Blocks outside the map are OCCUPIED.
+	 */
+	public byte getState(int level, int bx, int by) {
+		BooleanMap any = anyOccupied[level];
+		if (bx < 0 || by < 0 || bx >= any.getWidth() || by >= any.getHeight()) {
+			return OCCUPIED;
+		}
+		if (!any.get((byte) bx, (byte) by)) {
+			return FREE;
+		}
+		return allOccupied[level].get((byte) bx, (byte) by) ? OCCUPIED : MIXED;
+	}
+
+	/**
+	 * Finds the biggest free block that contains the cell (x,y).
+	 *
+	 * @param x
+	 * @param y
+	 * @return Level of the block or -1, if (x,y) is occupied or outside the
+	 *         map
+	 */
+	public int getFreeLevel(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return -1;
+		}
+		for (int level = anyOccupied.length - 1; level >= 0; level--) {
+			byte state = getState(level, x >> level, y >> level);
+			if (state == FREE) {
+				return level;
+			} else if (state == OCCUPIED) {
+				return -1;
+			}
+		}
+		// Level 0 is never MIXED
+		return -1;
+	}
+
+	/**
+	 * Follows the ray from (x,y) in direction (dx,dy) until it enters a cell
+	 * that is occupied or outside the map. Cell (x,y) covers the square [x,
+	 * x + 1) x [y, y + 1). The ray jumps from block border to block border of
+	 * the biggest free block it is in.
+	 *
+	 * @param x
+	 * @param y
+	 * @param dx
+	 *            Direction, normalized
+	 * @param dy
+	 *            Direction, normalized
+	 * @param start
+	 *            Distance along the ray where the search starts
+	 * @param maxDistance
+	 * @return Distance along the ray to the first non free cell, at most
+	 *         maxDistance
+	 */
+	public double castRay(double x, double y, double dx, double dy,
+			double start, double maxDistance) {
+		double t = start;
+		while (t < maxDistance) {
+			int cellX = (int) Math.floor(x + t * dx);
+			int cellY = (int) Math.floor(y + t * dy);
+			int level = getFreeLevel(cellX, cellY);
+			if (level < 0) {
+				return t;
+			}
+			// Leave the free block through the border the ray points to
+			int blockX = cellX >> level << level;
+			int blockY = cellY >> level << level;
+			int size = 1 << level;
+			double exitX = dx > 0 ? (blockX + size - x) / dx
+					: dx < 0 ? (blockX - x) / dx : Double.POSITIVE_INFINITY;
+			double exitY = dy > 0 ? (blockY + size - y) / dy
+					: dy < 0 ? (blockY - y) / dy : Double.POSITIVE_INFINITY;
+			t = Math.max(Math.min(exitX, exitY), t) + EPSILON;
+		}
+		return maxDistance;
+	}
+
+	public int getLevelCount() {
+		return anyOccupied.length;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+}
@@ -11,8 +11,35 @@ public class ParticleFilter {
 	 */
 	Particles particles;
 
+	/**
+	 * Sensor measurements of the last resample (in cm)
+	 */
+	int lastFront;
+	int lastBack;
+
+	/**
+	 * Calculates the measurements of all particles at once, created for the
+	 * sensor passed to resample
+	 */
+	BatchRayCaster batchRayCaster;
+
+	/**
+	 * Poses of all particles for the batchRayCaster and what the sensors
+	 * measure for them, reused by every resample
+	 */
+	double[] poseX;
+	double[] poseY;
+	double[] poseTheta;
+	int[] believedFront;
+	int[] believedBack;
+
 	public ParticleFilter(Particles particles) {
 		this.particles = particles;
+		this.poseX = new double[Constants.NO_OF_PARTICLES];
+		this.poseY = new double[Constants.NO_OF_PARTICLES];
+		this.poseTheta = new double[Constants.NO_OF_PARTICLES];
+		this.believedFront = new int[Constants.NO_OF_PARTICLES];
+		this.believedBack = new int[Constants.NO_OF_PARTICLES];
 	}
 
 	/**
@@ -69,15 +96,16 @@ public class ParticleFilter {
 			actualFront = sensor.measureFront(referenceCar);
 			actualBack = sensor.measureBack(referenceCar);
 		}
+		lastFront = actualFront;
+		lastBack = actualBack;
 
 		// Calculate weight of each particle by comparing the actual sensor
 		// measurements with the ones that every particle yields.
+		measureParticles(sensor, believedFront, believedBack);
 		double[] weight = new double[Constants.NO_OF_PARTICLES];
 		for (int i = 0; i < Constants.NO_OF_PARTICLES; i++) {
-			int believedFront = sensor.measureFront(particles.getCar(i));
-			int believedBack = sensor.measureBack(particles.getCar(i));
-			int errorFront = Math.abs(believedFront - actualFront);
-			int errorBack = Math.abs(believedBack - actualBack);
+			int errorFront = Math.abs(believedFront[i] - actualFront);
+			int errorBack = Math.abs(believedBack[i] - actualBack);
 			weight[i] = Algebra.gaussian(Constants.ParticleFilter.ERROR_MEAN,
 					Constants.ParticleFilter.ERROR_SDEV, errorFront
 							* errorFront + errorBack * errorBack);
@@ -112,4 +140,59 @@ public class ParticleFilter {
 			particles.setCar(i, newCars[i]);
 		}
 	}
+
+	/**
+	 * Uses a BatchRayCaster.java for the particles, e.g. pc/VectorRayCaster.
+	 * It is replaced if resample is called with another sensor.
+	 * 
+	 * @param batchRayCaster
+	 */
+	public void setBatchRayCaster(BatchRayCaster batchRayCaster) {
+		this.batchRayCaster = batchRayCaster;
+	}
+
+	/**
+	 * Calculates what the sensors would measure for every particle. With a
+	 * range table the sensor looks the measures up, otherwise the rays of all
+	 * particles are cast at once by the BatchRayCaster.java.
+	 */
+	private void measureParticles(UltrasonicSensor sensor, int[] front,
+			int[] back) {
+		if (sensor.getRangeTable() != null) {
+			for (int i = 0; i < Constants.NO_OF_PARTICLES; i++) {
+				front[i] = sensor.measureFront(particles.getCar(i));
+				back[i] = sensor.measureBack(particles.getCar(i));
+			}
+			return;
+		}
+		if (batchRayCaster == null || batchRayCaster.getSensor() != sensor) {
+			batchRayCaster = new BatchRayCaster(sensor);
+		}
+		for (int i = 0; i < Constants.NO_OF_PARTICLES; i++) {
+			State state = particles.getCar(i).getState();
+			poseX[i] = state.getPosition().getX();
+			poseY[i] = state.getPosition().getY();
+			poseTheta[i] = state.getHeading().get(AngleType.RADIANS);
+		}
+		batchRayCaster.measure(poseX, poseY, poseTheta,
+				Constants.NO_OF_PARTICLES, front, back);
+	}
+
+	/**
+	 * Returns the front measurement that was used by the last resample.
+	 * 
+	 * @return In cm
+	 */
+	public int getLastFront() {
+		return lastFront;
+	}
+
+	/**
+	 * Returns the back measurement that was used by the last resample.
+	 * 
+	 * @return In cm
+	 */
+	public int getLastBack() {
+		return lastBack;
+	}
 }
@@ -0,0 +1,23 @@
+/**
+ * A grid of cells the robot may or may not pass. Unlike BooleanMap.java the
+ * coordinates are int, so graph searches working on this are not limited to
+ * maps that fit into byte coordinates.
+ * 
+ * @author Johannes
+ * 
+ */
+public interface PassableGrid {
+
+	public int getWidth();
+
+	public int getHeight();
+
+	/**
+	 * Checks if the robot may pass the given cell.
+	 * 
+	 * @param x
+	 * @param y
+	 * @return false if (x,y) is outside the grid or blocked
+	 */
+	public boolean isPassable(int x, int y);
+}
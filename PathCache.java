@@ -0,0 +1,150 @@
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores computed paths in files, so a surrounding that was already planned on
+ * does not have to be planned again. Every file is named after a key that
+ * covers everything the path depends on (see key()), so changing the map or
+ * one of the planning constants automatically uses another file.
+ * 
+ * File format (big endian):
+ * <ul>
+ * <li>int MAGIC</li>
+ * <li>int key</li>
+ * <li>unsigned short number of lines</li>
+ * <li>4 bytes per line: x and y of its first point, x and y of its second
+ * point</li>
+ * </ul>
+ * 
+ * @author Johannes
+ * 
+ */
+public final class PathCache {
+
+	/**
+	 * Identifies path files (and their version)
+	 */
+	static final int MAGIC = 0x50415431;
+
+	/**
+	 * Bytes before the lines
+	 */
+	static final int HEADER_SIZE = 10;
+
+	/**
+	 * Computes the key of the path that would be planned for the surrounding
+	 * with the current constants.
+	 * 
+	 * @param surrounding
+	 * @return
+	 */
+	public static int key(Surrounding surrounding) {
+		int key = surrounding.contentHash();
+		key = 31 * key + Constants.MIN_DISTANCE;
+		key = 31 * key + Constants.DOUGLAS_PEUCKER_TOLERANCE;
+		key = 31 * key + Constants.CLEARANCE_SOFT_COST_RANGE;
+		key = 31 * key + Constants.PLANNER_MODE.ordinal();
+		key = 31 * key + Constants.HPA_CLUSTER_SIZE;
+		long budget = Constants.PLANNING_TIME_BUDGET_MS;
+		key = 31 * key + (int) (budget ^ budget >>> 32);
+		return key;
+	}
+
+	/**
+	 * Loads the path of the given key.
+	 * 
+	 * @param key
+	 * @return Lines of the path or null, if there is no (valid) file for the
+	 *         key
+	 */
+	public static List<ByteLine> load(int key) {
+		File file = file(key);
+		if (!file.exists()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			if (in.readInt() != MAGIC || in.readInt() != key) {
+				return null;
+			}
+			// Unsigned like written by store, so it is never negative
+			int count = in.readUnsignedShort();
+			if (4L * count > file.length() - HEADER_SIZE) {
+				// Fewer lines in the file than the count says
+				return null;
+			}
+			List<ByteLine> lines = new ArrayList<ByteLine>(count);
+			for (int i = 0; i < count; i++) {
+				BytePoint p1 = new BytePoint(in.readByte(), in.readByte());
+				BytePoint p2 = new BytePoint(in.readByte(), in.readByte());
+				lines.add(new ByteLine(p1, p2));
+			}
+			return lines;
+		} catch (IOException e) {
+			// Treat broken files like missing ones, the path is just planned
+			// again
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * Stores the path under the given key. Failures are ignored, the path
+	 * will just be planned again next time.
+	 * 
+	 * @param key
+	 * @param lines
+	 * @return true if the path was stored
+	 */
+	public static boolean store(int key, List<ByteLine> lines) {
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new FileOutputStream(file(key)));
+			out.writeInt(MAGIC);
+			out.writeInt(key);
+			out.writeShort(lines.size());
+			for (ByteLine line : lines) {
+				out.writeByte(line.getP1().getX());
+				out.writeByte(line.getP1().getY());
+				out.writeByte(line.getP2().getX());
+				out.writeByte(line.getP2().getY());
+			}
+			out.flush();
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			close(out);
+		}
+	}
+
+	/**
+	 * The NXT only allows file names of up to 20 characters.
+	 */
+	private static File file(int key) {
+		String hex = Integer.toHexString(key);
+		while (hex.length() < 8) {
+			hex = "0" + hex;
+		}
+		return new File("p" + hex + ".pth");
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// Nothing left to do
+			}
+		}
+	}
+}
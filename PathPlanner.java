@@ -0,0 +1,87 @@
+import java.util.List;
+
+/**
+ * Runs the graph search selected by a PlannerMode.
+ * 
+ * @author Johannes
+ * 
+ */
+public final class PathPlanner {
+
+	/**
+	 * Abstraction used by HIERARCHICAL. Kept as long as the same clearance map
+	 * is planned on, so it is only built once per map and minimum distance.
+	 */
+	static HierarchicalPlanner hierarchicalPlanner;
+
+	/**
+	 * False if the last path was cut short by the time budget of ANYTIME, so
+	 * planning again (with more time) may give a better path
+	 */
+	static boolean lastPathFinal = true;
+
+	/**
+	 * Finds a path from the start to the goal of the surrounding, that keeps
+	 * more than minDistance to any wall or obstacle.
+	 * 
+	 * @param surrounding
+	 * @param minDistance
+	 * @param mode
+	 * @return Every cell of the path from start to goal (only the corners for
+	 *         THETA_STAR) or null, if no path found
+	 */
+	public static List<BytePoint> compute(Surrounding surrounding,
+			int minDistance, PlannerMode mode) {
+		lastPathFinal = true;
+		switch (mode) {
+		case A_STAR:
+			return AStar.compute(surrounding, minDistance);
+		case JUMP_POINT_SEARCH:
+			return JumpPointSearch.compute(surrounding, minDistance);
+		case WIDE_A_STAR:
+			return WideAStar.compute(surrounding, minDistance);
+		case HIERARCHICAL:
+			return computeHierarchical(surrounding, minDistance);
+		case THETA_STAR:
+			return ThetaStar.compute(surrounding, minDistance);
+		case ANYTIME:
+			return computeAnytime(surrounding, minDistance);
+		default:
+			throw new IllegalArgumentException("mode");
+		}
+	}
+
+	/**
+	 * Checks if the last path of compute does not depend on how fast the
+	 * planner ran. Only such paths should be cached (see PathCache.java).
+	 * 
+	 * @return false if ANYTIME stopped at its deadline before the path was
+	 *         optimal
+	 */
+	public static boolean isLastPathFinal() {
+		return lastPathFinal;
+	}
+
+	private static List<BytePoint> computeAnytime(Surrounding surrounding,
+			int minDistance) {
+		AnytimeAStar planner = AnytimeAStar.plan(surrounding, minDistance,
+				Constants.PLANNING_TIME_BUDGET_MS);
+		lastPathFinal = planner.getSuboptimality() <= 1.;
+		return planner.getBytePoints();
+	}
+
+	private static List<BytePoint> computeHierarchical(Surrounding surrounding,
+			int minDistance) {
+		ClearanceMap clearance = surrounding.getClearanceMap(minDistance);
+		if (hierarchicalPlanner == null
+				|| hierarchicalPlanner.getGrid() != clearance) {
+			hierarchicalPlanner = new HierarchicalPlanner(clearance,
+					Constants.HPA_CLUSTER_SIZE);
+		}
+		BytePoint start = surrounding.getStart();
+		BytePoint goal = surrounding.getGoal();
+		int[] path = hierarchicalPlanner.compute(start.getX(), start.getY(),
+				goal.getX(), goal.getY());
+		return path == null ? null : WideAStar.toBytePoints(clearance, path);
+	}
+}
@@ -0,0 +1,42 @@
+/**
+ * The graph search used to find a path from start to goal.
+ * 
+ * @author Johannes
+ * 
+ */
+public enum PlannerMode {
+	/**
+	 * A* on the 8-connected grid, see AStar.java
+	 */
+	A_STAR,
+	/**
+	 * Jump point search, see JumpPointSearch.java. Finds paths of the same
+	 * length as A_STAR with much less expansions on open maps. Ignores
+	 * Constants.CLEARANCE_SOFT_COST_RANGE, as jumps need uniform costs.
+	 */
+	JUMP_POINT_SEARCH,
+	/**
+	 * A* with float scores and int coordinates, see WideAStar.java. Does not
+	 * overflow on long paths or big maps, but needs more memory than A_STAR.
+	 */
+	WIDE_A_STAR,
+	/**
+	 * Hierarchical path planning, see HierarchicalPlanner.java. The
+	 * abstraction is built once per map, after that queries are cheap even on
+	 * big maps. Paths are near optimal. Constants.CLEARANCE_SOFT_COST_RANGE
+	 * is not considered by the abstraction.
+	 */
+	HIERARCHICAL,
+	/**
+	 * Any-angle path planning, see ThetaStar.java. Only returns the corners of
+	 * the path, so there is nothing left to reduce by DouglasPeucker.java.
+	 */
+	THETA_STAR,
+	/**
+	 * Anytime planning, see AnytimeAStar.java. Quickly finds a first path,
+	 * which is always finished, and then improves it until
+	 * Constants.PLANNING_TIME_BUDGET_MS is over. The result is optimal if
+	 * there was enough time.
+	 */
+	ANYTIME
+}
@@ -0,0 +1,334 @@
+import java.util.List;
+
+/**
+ * Obstacle with any shape (convex or concave, without holes), given by its
+ * corners in order. Unlike ByteRectangle.java corners may have any
+ * coordinates, so angled walls do not have to be approximated by many small
+ * rectangles.
+ *
+ * A cell (x,y) of a map belongs to the polygon if the point (x,y) lies inside
+ * or on its border, which is the same as for ByteRectangle.java. Cells are
+ * found with a scanline fill (see fill): for every column of the map the
+ * crossings of the edges with the column are found in an edge table, and the
+ * cells between two crossings are set as one span.
+ *
+ * @author Johannes
+ *
+ */
+public class Polygon {
+
+	/**
+	 * Corners in order
+	 */
+	double[] xs;
+	double[] ys;
+
+	/**
+	 * Bounding box
+	 */
+	double xMin;
+	double xMax;
+	double yMin;
+	double yMax;
+
+	/**
+	 * Edge table for the scanline fill: edges ordered by their smallest x,
+	 * every edge i goes from corner edges[i] to the next corner.
+	 */
+	int[] edges;
+
+	/**
+	 * Creates a polygon from its corners.
+	 *
+	 * @param corners
+	 *            At least 3, in order (clockwise or counter clockwise)
+	 */
+	public Polygon(List<DoublePoint> corners) {
+		if (corners.size() < 3) {
+			throw new IllegalArgumentException(
+					"A polygon needs at least 3 corners");
+		}
+		xs = new double[corners.size()];
+		ys = new double[corners.size()];
+		for (int i = 0; i < xs.length; i++) {
+			xs[i] = corners.get(i).getX();
+			ys[i] = corners.get(i).getY();
+		}
+		init();
+	}
+
+	/**
+	 * Creates a polygon from its corners.
+	 *
+	 * @param xs
+	 *            x coordinates of at least 3 corners, in order
+	 * @param ys
+	 *            y coordinates of the corners
+	 */
+	public Polygon(double[] xs, double[] ys) {
+		if (xs.length < 3 || xs.length != ys.length) {
+			throw new IllegalArgumentException(
+					"A polygon needs at least 3 corners with x and y");
+		}
+		this.xs = new double[xs.length];
+		this.ys = new double[ys.length];
+		System.arraycopy(xs, 0, this.xs, 0, xs.length);
+		System.arraycopy(ys, 0, this.ys, 0, ys.length);
+		init();
+	}
+
+	/**
+	 * Creates a rectangle that is rotated around its center.
+	 *
+	 * @param center
+	 * @param length
+	 *            Size along the direction of angle
+	 * @param width
+	 *            Size perpendicular to the direction of angle
+	 * @param angle
+	 *            Rotation (counter clockwise, 0 is along the x axis)
+	 * @return
+	 */
+	public static Polygon orientedRectangle(DoublePoint center, double length,
+			double width, Angle angle) {
+		double theta = angle.get(AngleType.RADIANS);
+		double lx = Math.cos(theta) * length / 2;
+		double ly = Math.sin(theta) * length / 2;
+		double wx = -Math.sin(theta) * width / 2;
+		double wy = Math.cos(theta) * width / 2;
+		double cx = center.getX();
+		double cy = center.getY();
+		return new Polygon(new double[] { cx - lx - wx, cx + lx - wx,
+				cx + lx + wx, cx - lx + wx }, new double[] { cy - ly - wy,
+				cy + ly - wy, cy + ly + wy, cy - ly + wy });
+	}
+
+	/**
+	 * Sets all cells of the map that belong to the polygon to b. Cells
+	 * outside the map are ignored.
+	 *
+	 * @param map
+	 * @param b
+	 */
+	public void fill(BooleanMap map, boolean b) {
+		int n = xs.length;
+		double[] crossings = new double[n];
+		int[] active = new int[n];
+		int activeCount = 0;
+		int next = 0;
+		int xFrom = Math.max(0, (int) Math.ceil(xMin));
+		int xTo = Math.min(map.getWidth() - 1, (int) Math.floor(xMax));
+		for (int x = xFrom; x <= xTo; x++) {
+			// Add edges that start at or before this column
+			while (next < n && edgeXMin(edges[next]) <= x) {
+				active[activeCount++] = edges[next++];
+			}
+			// Collect crossings with this column, edges are half open in x
+			// so corners are not counted twice. Edges that end are dropped.
+			int count = 0;
+			for (int i = 0; i < activeCount; i++) {
+				int edge = active[i];
+				if (edgeXMax(edge) <= x) {
+					active[i--] = active[--activeCount];
+					continue;
+				}
+				double crossing = crossing(edge, x);
+				if (!Double.isNaN(crossing)) {
+					crossings[count++] = crossing;
+				}
+			}
+			sort(crossings, count);
+			for (int i = 0; i + 1 < count; i += 2) {
+				map.setSpan((byte) x, (int) Math.ceil(crossings[i]),
+						(int) Math.floor(crossings[i + 1]), b);
+			}
+			// Cells exactly on vertical edges or corners are on the border
+			for (int i = 0; i < n; i++) {
+				int j = (i + 1) % n;
+				if (xs[i] == x && xs[j] == x) {
+					map.setSpan((byte) x,
+							(int) Math.ceil(Math.min(ys[i], ys[j])),
+							(int) Math.floor(Math.max(ys[i], ys[j])), b);
+				} else if (xs[i] == x && ys[i] == Math.floor(ys[i])) {
+					map.setSpan((byte) x, (int) ys[i], (int) ys[i], b);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if the point lies inside the polygon (even odd rule).
+	 *
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public boolean contains(double x, double y) {
+		if (x < xMin || x > xMax || y < yMin || y > yMax) {
+			return false;
+		}
+		boolean inside = false;
+		for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+			if ((ys[i] > y) != (ys[j] > y)
+					&& x < (xs[j] - xs[i]) * (y - ys[i]) / (ys[j] - ys[i])
+							+ xs[i]) {
+				inside = !inside;
+			}
+		}
+		return inside;
+	}
+
+	/**
+	 * Euclidean distance of the point to the polygon.
+	 *
+	 * @param x
+	 * @param y
+	 * @return 0 if the point lies inside
+	 */
+	public double distance(double x, double y) {
+		if (contains(x, y)) {
+			return 0;
+		}
+		double min = Double.MAX_VALUE;
+		for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+			min = Math.min(min, segmentDistanceSquared(x, y, xs[j], ys[j],
+					xs[i], ys[i]));
+		}
+		return Math.sqrt(min);
+	}
+
+	/**
+	 * Lower bound of distance(x, y) that is cheap to calculate: the distance
+	 * to the bounding box.
+	 *
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public double boundsDistance(double x, double y) {
+		double dx = Math.max(0, Math.max(xMin - x, x - xMax));
+		double dy = Math.max(0, Math.max(yMin - y, y - yMax));
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Distance along the ray from (x,y) in direction (dx,dy) to the first
+	 * edge of the polygon.
+	 *
+	 * @param x
+	 * @param y
+	 * @param dx
+	 *            Direction, normalized
+	 * @param dy
+	 *            Direction, normalized
+	 * @return 0 if the ray starts inside, Double.POSITIVE_INFINITY if it does
+	 *         not hit the polygon
+	 */
+	public double rayIntersection(double x, double y, double dx, double dy) {
+		if (contains(x, y)) {
+			return 0;
+		}
+		double min = Double.POSITIVE_INFINITY;
+		for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+			// Solve (x,y) + t * (dx,dy) = corner j + s * (corner i - corner j)
+			double ex = xs[i] - xs[j];
+			double ey = ys[i] - ys[j];
+			double denominator = dx * ey - dy * ex;
+			if (denominator == 0) {
+				// Parallel
+				continue;
+			}
+			double wx = xs[j] - x;
+			double wy = ys[j] - y;
+			double t = (wx * ey - wy * ex) / denominator;
+			double s = (wx * dy - wy * dx) / denominator;
+			if (t >= 0 && s >= 0 && s <= 1 && t < min) {
+				min = t;
+			}
+		}
+		return min;
+	}
+
+	public int getCornerCount() {
+		return xs.length;
+	}
+
+	public DoublePoint getCorner(int i) {
+		return new DoublePoint(xs[i], ys[i]);
+	}
+
+	private void init() {
+		xMin = xMax = xs[0];
+		yMin = yMax = ys[0];
+		for (int i = 1; i < xs.length; i++) {
+			xMin = Math.min(xMin, xs[i]);
+			xMax = Math.max(xMax, xs[i]);
+			yMin = Math.min(yMin, ys[i]);
+			yMax = Math.max(yMax, ys[i]);
+		}
+		edges = new int[xs.length];
+		for (int i = 0; i < edges.length; i++) {
+			edges[i] = i;
+		}
+		// Insertion sort by smallest x, polygons have few corners
+		for (int i = 1; i < edges.length; i++) {
+			int edge = edges[i];
+			int j = i - 1;
+			while (j >= 0 && edgeXMin(edges[j]) > edgeXMin(edge)) {
+				edges[j + 1] = edges[j];
+				j--;
+			}
+			edges[j + 1] = edge;
+		}
+	}
+
+	private double edgeXMin(int edge) {
+		return Math.min(xs[edge], xs[(edge + 1) % xs.length]);
+	}
+
+	private double edgeXMax(int edge) {
+		return Math.max(xs[edge], xs[(edge + 1) % xs.length]);
+	}
+
+	/**
+	 * y where the edge crosses column x. Edges are half open [xMin, xMax), so
+	 * a corner shared by two edges is counted once if the polygon passes the
+	 * column there and twice or not at all if it turns.
+	 *
+	 * @return NaN if the edge does not cross the column
+	 */
+	private double crossing(int edge, int x) {
+		int other = (edge + 1) % xs.length;
+		double x0 = xs[edge];
+		double x1 = xs[other];
+		if (x0 == x1 || x < Math.min(x0, x1) || x >= Math.max(x0, x1)) {
+			return Double.NaN;
+		}
+		return ys[edge] + (ys[other] - ys[edge]) * (x - x0) / (x1 - x0);
+	}
+
+	private static double segmentDistanceSquared(double px, double py,
+			double ax, double ay, double bx, double by) {
+		double ex = bx - ax;
+		double ey = by - ay;
+		double lengthSquared = ex * ex + ey * ey;
+		double t = lengthSquared == 0 ? 0 : ((px - ax) * ex + (py - ay) * ey)
+				/ lengthSquared;
+		t = Math.max(0, Math.min(1, t));
+		double dx = ax + t * ex - px;
+		double dy = ay + t * ey - py;
+		return dx * dx + dy * dy;
+	}
+
+	private static void sort(double[] values, int count) {
+		for (int i = 1; i < count; i++) {
+			double value = values[i];
+			int j = i - 1;
+			while (j >= 0 && values[j] > value) {
+				values[j + 1] = values[j];
+				j--;
+			}
+			values[j + 1] = value;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ * Precomputed measurements of both ultrasonic sensors for every pose, so
+ * UltrasonicSensor.java can answer with a table lookup instead of casting
+ * rays. Poses are discretized to the cells of the map and headingBins
+ * headings (bin i is the heading i * 360 / headingBins degrees). The values
+ * are what UltrasonicSensor measures for the car at that pose, in units of
+ * 5cm, so one byte per pose and sensor.
+ *
+ * The table needs width * height * headingBins * 2 bytes, which is far more
+ * than the NXT has. Use it on a PC and cache it with pc/RangeTableFile.java,
+ * as building it casts rays for every pose.
+ *
+ * @author Johannes
+ *
+ */
+public class RangeTable {
+
+	int width;
+	int height;
+	int headingBins;
+
+	/**
+	 * Measures of the front (back) sensor in units of 5cm, index (x * height
+	 * + y) * headingBins + bin
+	 */
+	byte[] front;
+	byte[] back;
+
+	/**
+	 * Builds the table by casting the rays of both sensors for every pose.
+	 *
+	 * @param surrounding
+	 * @param headingBins
+	 *            Number of headings per cell
+	 */
+	public RangeTable(Surrounding surrounding, int headingBins) {
+		this(surrounding.getWidth(), surrounding.getHeight(), headingBins,
+				null, null);
+		UltrasonicSensor sensor = new UltrasonicSensor(surrounding);
+		Car car = new Car(new State(new DoublePoint(0, 0), new Angle()));
+		int i = 0;
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				car.getState().setPosition(new DoublePoint(x, y));
+				for (int bin = 0; bin < headingBins; bin++) {
+					car.getState().setHeading(
+							Angle.newDeg(bin * 360. / headingBins));
+					front[i] = (byte) (sensor.measureFront(car) / 5);
+					back[i] = (byte) (sensor.measureBack(car) / 5);
+					i++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a table from existing values (see pc/RangeTableFile.java).
+	 *
+	 * @param width
+	 * @param height
+	 * @param headingBins
+	 * @param front
+	 *            null to create an empty table
+	 * @param back
+	 *            null to create an empty table
+	 */
+	RangeTable(int width, int height, int headingBins, byte[] front,
+			byte[] back) {
+		if (width <= 0 || height <= 0 || headingBins <= 0) {
+			throw new IllegalArgumentException(
+					"Size and heading bins have to be positive");
+		}
+		int size = width * height * headingBins;
+		if (front == null || back == null) {
+			front = new byte[size];
+			back = new byte[size];
+		} else if (front.length != size || back.length != size) {
+			throw new IllegalArgumentException("Tables have the wrong size");
+		}
+		this.width = width;
+		this.height = height;
+		this.headingBins = headingBins;
+		this.front = front;
+		this.back = back;
+	}
+
+	/**
+	 * Checks if the table has a value for the pose of the car.
+	 *
+	 * @param car
+	 * @return false if the car is outside the map
+	 */
+	public boolean contains(Car car) {
+		return index(car) >= 0;
+	}
+
+	/**
+	 * What the front sensor measures for the closest pose of the table.
+	 *
+	 * @param car
+	 *            Must be inside the map (see contains)
+	 * @return Measure in cm, like UltrasonicSensor.measureFront
+	 */
+	public int measureFront(Car car) {
+		return front[checkedIndex(car)] * 5;
+	}
+
+	/**
+	 * What the back sensor measures for the closest pose of the table.
+	 *
+	 * @param car
+	 *            Must be inside the map (see contains)
+	 * @return Measure in cm, like UltrasonicSensor.measureBack
+	 */
+	public int measureBack(Car car) {
+		return back[checkedIndex(car)] * 5;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getHeadingBins() {
+		return headingBins;
+	}
+
+	private int checkedIndex(Car car) {
+		int index = index(car);
+		if (index < 0) {
+			throw new IllegalArgumentException("The car is outside the map");
+		}
+		return index;
+	}
+
+	/**
+	 * Index of the closest pose, -1 if the car is outside the map
+	 */
+	private int index(Car car) {
+		DoublePoint position = car.getState().getPosition();
+		long x = Math.round(position.getX());
+		long y = Math.round(position.getY());
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return -1;
+		}
+		double degrees = car.getState().getHeading().get(AngleType.DEGREE);
+		int bin = (int) (Math.round(degrees * headingBins / 360.) % headingBins);
+		if (bin < 0) {
+			bin += headingBins;
+		}
+		return (int) ((x * height + y) * headingBins + bin);
+	}
+}
@@ -0,0 +1,34 @@
+/**
+ * The way the simulated ultrasonic sensor (see UltrasonicSensor.java) finds
+ * the first obstacle along a ray.
+ *
+ * @author Johannes
+ *
+ */
+public enum RayCastMode {
+	/**
+	 * Steps along the ray one cell (in x or y) at a time
+	 */
+	STEP,
+	/**
+	 * Visits every cell the ray crosses exactly once, see
+	 * Surrounding.castRay
+	 */
+	DDA,
+	/**
+	 * Jumps over whole free blocks, see OccupancyPyramid.java. Fast in big
+	 * empty areas.
+	 */
+	PYRAMID,
+	/**
+	 * Jumps ahead by the clearance of the current sample, see
+	 * Surrounding.sphereTrace. Fast in open rooms.
+	 */
+	SPHERE_TRACING,
+	/**
+	 * Intersects the ray with the walls and the rectangle obstacles, see
+	 * Surrounding.distanceAlongRay. Exact, without following the ray through
+	 * the cells.
+	 */
+	ANALYTIC
+}
@@ -0,0 +1,151 @@
+/**
+ * Memory used by the graph searches on a PassableGrid (see WideAStar.java):
+ * scores, where every cell was reached from, closed set and open set. Cells
+ * are given by their index x * height + y. Parents are stored as one such
+ * index, instead of one map for the x and one for the y coordinate.
+ *
+ * A workspace can be reused for many searches on grids with at most capacity
+ * cells. Instead of clearing all arrays before every search, every search gets
+ * a new generation and values written by earlier generations are ignored.
+ *
+ * @author Johannes
+ *
+ */
+public class SearchWorkspace {
+
+	/**
+	 * Marks a cell that was not reached from anywhere
+	 */
+	static final int NO_CELL = -1;
+
+	float[] gScores;
+	int[] cameFrom;
+
+	/**
+	 * Generation in which gScore and cameFrom of a cell were last written
+	 */
+	int[] reached;
+
+	/**
+	 * Generation in which a cell was last closed
+	 */
+	int[] closed;
+
+	IndexedHeap openSet;
+
+	/**
+	 * Current search
+	 */
+	int generation;
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity
+	 *            Maximum number of cells of the grids that are searched
+	 */
+	public SearchWorkspace(int capacity) {
+		gScores = new float[capacity];
+		cameFrom = new int[capacity];
+		reached = new int[capacity];
+		closed = new int[capacity];
+		openSet = new IndexedHeap(capacity);
+		generation = 1;
+	}
+
+	/**
+	 * Prepares the workspace for a new search.
+	 */
+	public void reset() {
+		openSet.clear();
+		generation++;
+		if (generation == Integer.MAX_VALUE) {
+			// Start over, so old generations cannot be confused with new ones
+			for (int i = 0; i < reached.length; i++) {
+				reached[i] = 0;
+				closed[i] = 0;
+			}
+			generation = 1;
+		}
+	}
+
+	/**
+	 * Checks if the workspace is big enough for the given grid.
+	 *
+	 * @param grid
+	 * @return
+	 */
+	public boolean fits(PassableGrid grid) {
+		return (long) grid.getWidth() * grid.getHeight() <= gScores.length;
+	}
+
+	/**
+	 * Returns the g score of a cell.
+	 *
+	 * @param cell
+	 * @return Float.POSITIVE_INFINITY if the cell was not reached in this
+	 *         search
+	 */
+	public float getGScore(int cell) {
+		return reached[cell] == generation ? gScores[cell]
+				: Float.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Returns the cell from which the given cell was reached.
+	 *
+	 * @param cell
+	 * @return -1 if the cell was not reached from anywhere in this search
+	 */
+	public int getCameFrom(int cell) {
+		return reached[cell] == generation ? cameFrom[cell] : NO_CELL;
+	}
+
+	/**
+	 * Sets g score and the cell from which the given cell was reached.
+	 *
+	 * @param cell
+	 * @param gScore
+	 * @param from
+	 *            -1 for the start
+	 */
+	public void reach(int cell, float gScore, int from) {
+		gScores[cell] = gScore;
+		cameFrom[cell] = from;
+		reached[cell] = generation;
+	}
+
+	public boolean isClosed(int cell) {
+		return closed[cell] == generation;
+	}
+
+	public void close(int cell) {
+		closed[cell] = generation;
+	}
+
+	public IndexedHeap getOpenSet() {
+		return openSet;
+	}
+
+	public int getCapacity() {
+		return gScores.length;
+	}
+
+	/**
+	 * Follows cameFrom from the given cell back to the start.
+	 *
+	 * @param cell
+	 * @return Cell indices from start to the given cell
+	 */
+	public int[] reconstructPath(int cell) {
+		int length = 0;
+		for (int current = cell; current != NO_CELL; current = getCameFrom(current)) {
+			length++;
+		}
+		int[] path = new int[length];
+		for (int current = cell; current != NO_CELL; current = getCameFrom(current)) {
+			path[--length] = current;
+		}
+		return path;
+	}
+}
@@ -35,6 +35,13 @@ public class Surrounding {
 		return surrounding;
 	}
 
+	/**
+	 * How much closer than the clearance of its cell a point can be to an
+	 * obstacle: the diagonal of a cell (see sphereTrace)
+	 */
+	static final double SPHERE_TRACING_MARGIN = Math.sqrt(2)
+			+ 1. / DistanceField.SCALE;
+
 	/**
 	 * True where non passable area
 	 */
@@ -45,6 +52,16 @@ public class Surrounding {
 	 */
 	List<ByteRectangle> obstacles;
 
+	/**
+	 * Obstacles that are no axis aligned rectangles
+	 */
+	List<Polygon> polygons;
+
+	/**
+	 * Bucket grid over the obstacles for fast distance calculations
+	 */
+	ObstacleIndex obstacleIndex;
+
 	/**
 	 * Initial position
 	 */
@@ -60,6 +77,25 @@ public class Surrounding {
 	 */
 	Angle initialHeading;
 
+	/**
+	 * Clearance map of the last requested minimum distance. Calculated lazily
+	 * and dropped whenever the map changes.
+	 */
+	ClearanceMap clearanceMap;
+
+	/**
+	 * Distance of every cell to the closest wall or obstacle. Built lazily
+	 * and rebuilt on the next query after the map changed.
+	 */
+	DistanceField distanceField;
+	boolean distanceFieldOutdated;
+
+	/**
+	 * Free, occupied and mixed blocks of the map on several resolutions.
+	 * Built lazily and dropped whenever the map changes.
+	 */
+	OccupancyPyramid occupancyPyramid;
+
 	/**
 	 * Constructor. The area of the map may not be bigger than 5000 (height *
 	 * width)
@@ -74,6 +110,9 @@ public class Surrounding {
 		}
 		this.map = new BooleanMap(width, height);
 		this.obstacles = new LinkedList<ByteRectangle>();
+		this.polygons = new LinkedList<Polygon>();
+		this.obstacleIndex = new ObstacleIndex(width, height,
+				Constants.OBSTACLE_INDEX_BUCKET_SIZE);
 	}
 
 	/**
@@ -89,11 +128,28 @@ public class Surrounding {
 		byte yMin = lowLeft.getY();
 		byte yMax = upRight.getY();
 		for (byte x = xMin; x <= xMax; x++) {
-			for (byte y = yMin; y <= yMax; y++) {
-				map.set(x, y, true);
-			}
+			map.setSpan(x, yMin, yMax, true);
 		}
 		this.obstacles.add(obstacle);
+		this.obstacleIndex.add(obstacle);
+		this.clearanceMap = null;
+		this.occupancyPyramid = null;
+		this.distanceFieldOutdated = true;
+	}
+
+	/**
+	 * Adds an obstacle of any shape to the map (see Polygon.java). Cells are
+	 * filled by a scanline fill, distances are calculated to the actual
+	 * edges.
+	 * 
+	 * @param polygon
+	 */
+	public void addObstacle(Polygon polygon) {
+		polygon.fill(map, true);
+		this.polygons.add(polygon);
+		this.clearanceMap = null;
+		this.occupancyPyramid = null;
+		this.distanceFieldOutdated = true;
 	}
 
 	/**
@@ -104,7 +160,217 @@ public class Surrounding {
 	 * @return Distance to closest non passable area (wall or obstacle)
 	 */
 	public double distanceToNonPassableArea(byte x, byte y) {
-		return Math.min(distanceToObstacle(x, y), distanceToWall(x, y));
+		double distance;
+		DistanceField field = getDistanceField();
+		if (field.isValid(x, y)) {
+			distance = field.get(x, y);
+		} else {
+			// The distance field only covers the map
+			distance = Math.min(distanceToObstacle(x, y), distanceToWall(x, y));
+		}
+		// The distance field only knows the cells of polygons, which are never
+		// closer than their edges
+		return distanceToPolygon(x, y, distance);
+	}
+
+	/**
+	 * Distance along a ray to the first edge of any polygon obstacle (see
+	 * Polygon.java). Rectangles and walls are not considered, as they are
+	 * exactly represented by the cells of the map.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param dx
+	 *            Direction, normalized
+	 * @param dy
+	 *            Direction, normalized
+	 * @return Double.POSITIVE_INFINITY if no polygon is hit
+	 */
+	public double distanceToPolygonAlongRay(double x, double y, double dx,
+			double dy) {
+		double min = Double.POSITIVE_INFINITY;
+		for (Polygon polygon : polygons) {
+			min = Math.min(min, polygon.rayIntersection(x, y, dx, dy));
+		}
+		return min;
+	}
+
+	/**
+	 * Follows the ray from (x,y) in direction (dx,dy) through the cells of
+	 * the map until it enters a cell that is an obstacle or outside the map
+	 * (Amanatides and Woo). Cell (x,y) covers the square [x, x + 1) x [y, y +
+	 * 1). Every cell the ray crosses is visited once, the distance to the
+	 * next cell border in x and in y is updated by adding, and nothing is
+	 * allocated.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param dx
+	 *            Direction, normalized
+	 * @param dy
+	 *            Direction, normalized
+	 * @param start
+	 *            Distance along the ray where the search starts
+	 * @param maxDistance
+	 * @return Distance along the ray to the first cell that is not passable,
+	 *         at most maxDistance
+	 */
+	public double castRay(double x, double y, double dx, double dy,
+			double start, double maxDistance) {
+		double startX = x + start * dx;
+		double startY = y + start * dy;
+		int cellX = (int) Math.floor(startX);
+		int cellY = (int) Math.floor(startY);
+		int stepX = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+		int stepY = dy > 0 ? 1 : dy < 0 ? -1 : 0;
+		// Distance along the ray between two borders in x (y)
+		double deltaX = stepX == 0 ? Double.POSITIVE_INFINITY
+				: 1 / Math.abs(dx);
+		double deltaY = stepY == 0 ? Double.POSITIVE_INFINITY
+				: 1 / Math.abs(dy);
+		// Distance along the ray to the next border in x (y)
+		double nextX = stepX == 0 ? Double.POSITIVE_INFINITY : start
+				+ ((stepX > 0 ? cellX + 1 : cellX) - startX) / dx;
+		double nextY = stepY == 0 ? Double.POSITIVE_INFINITY : start
+				+ ((stepY > 0 ? cellY + 1 : cellY) - startY) / dy;
+		int width = map.getWidth();
+		int height = map.getHeight();
+		double t = start;
+		while (t < maxDistance) {
+			if (cellX < 0 || cellY < 0 || cellX >= width || cellY >= height
+					|| map.get((byte) cellX, (byte) cellY)) {
+				return t;
+			}
+			if (nextX < nextY) {
+				t = nextX;
+				nextX += deltaX;
+				cellX += stepX;
+			} else {
+				t = nextY;
+				nextY += deltaY;
+				cellY += stepY;
+			}
+		}
+		return maxDistance;
+	}
+
+	/**
+	 * Like castRay, but first jumps ahead by the clearance (see
+	 * DistanceField.java) at every sample (sphere tracing). In open areas
+	 * this needs a few steps instead of one per cell. The clearance is
+	 * measured between cells, a point anywhere inside a cell can be up to
+	 * SPHERE_TRACING_MARGIN closer to an obstacle, so that is subtracted.
+	 * When the steps get smaller than a cell, castRay finishes the ray
+	 * exactly.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param dx
+	 *            Direction, normalized
+	 * @param dy
+	 *            Direction, normalized
+	 * @param start
+	 *            Distance along the ray where the search starts
+	 * @param maxDistance
+	 * @return Distance along the ray to the first cell that is not passable,
+	 *         at most maxDistance
+	 */
+	public double sphereTrace(double x, double y, double dx, double dy,
+			double start, double maxDistance) {
+		DistanceField field = getDistanceField();
+		double t = start;
+		while (t < maxDistance) {
+			int cellX = (int) Math.floor(x + t * dx);
+			int cellY = (int) Math.floor(y + t * dy);
+			if (!field.isValid(cellX, cellY)) {
+				break;
+			}
+			double step = field.get(cellX, cellY) - SPHERE_TRACING_MARGIN;
+			if (step < 1) {
+				break;
+			}
+			t += step;
+		}
+		return castRay(x, y, dx, dy, t, maxDistance);
+	}
+
+	/**
+	 * Exact distance along a ray to the first wall or rectangle obstacle,
+	 * calculated with slab tests instead of following the ray through the
+	 * cells. Obstacles are the rectangles between their corners and the walls
+	 * are at 0, width and height, the same as for distanceToNonPassableArea,
+	 * while castRay treats every cell as a square of size 1. Polygons are not
+	 * considered (see distanceToPolygonAlongRay).
+	 * 
+	 * @param x
+	 * @param y
+	 * @param dx
+	 *            Direction, normalized
+	 * @param dy
+	 *            Direction, normalized
+	 * @param maxDistance
+	 * @return 0 if (x,y) is outside the map or inside an obstacle, at most
+	 *         maxDistance
+	 */
+	public double distanceAlongRay(double x, double y, double dx, double dy,
+			double maxDistance) {
+		double width = map.getWidth();
+		double height = map.getHeight();
+		if (x < 0 || y < 0 || x > width || y > height) {
+			return 0;
+		}
+		double wall = Math.min(dx > 0 ? (width - x) / dx
+				: dx < 0 ? -x / dx : Double.POSITIVE_INFINITY,
+				dy > 0 ? (height - y) / dy : dy < 0 ? -y / dy
+						: Double.POSITIVE_INFINITY);
+		return obstacleIndex.rayIntersection(x, y, dx, dy,
+				Math.min(wall, maxDistance));
+	}
+
+	/**
+	 * Returns the distance field of the current map. It is only rebuilt if
+	 * the map changed since the last call.
+	 * 
+	 * @return
+	 */
+	public DistanceField getDistanceField() {
+		if (distanceField == null) {
+			distanceField = new DistanceField(map);
+		} else if (distanceFieldOutdated) {
+			distanceField.build(map);
+		}
+		distanceFieldOutdated = false;
+		return distanceField;
+	}
+
+	/**
+	 * Returns the occupancy pyramid of the current map. It is only built once
+	 * and then reused until the map changes.
+	 * 
+	 * @return
+	 */
+	public OccupancyPyramid getOccupancyPyramid() {
+		if (occupancyPyramid == null) {
+			occupancyPyramid = new OccupancyPyramid(map);
+		}
+		return occupancyPyramid;
+	}
+
+	/**
+	 * Returns the clearance map for the given minimum distance. It is only
+	 * calculated once and then reused until the map changes (or another
+	 * minimum distance is requested).
+	 * 
+	 * @param minDistance
+	 * @return
+	 */
+	public ClearanceMap getClearanceMap(int minDistance) {
+		if (clearanceMap == null
+				|| clearanceMap.getMinDistance() != minDistance) {
+			clearanceMap = new ClearanceMap(this, minDistance,
+					Constants.CLEARANCE_SOFT_COST_RANGE);
+		}
+		return clearanceMap;
 	}
 
 	/**
@@ -138,34 +404,19 @@ public class Surrounding {
 	}
 
 	private double distanceToObstacle(byte x, byte y) {
-		double min = Double.MAX_VALUE;
-		for (ByteRectangle obstacle : obstacles) {
-			double thisDistance = getDistance(x, y, obstacle);
-			if (thisDistance < min) {
-				min = thisDistance;
-			}
-		}
-		return min;
+		return obstacleIndex.distance(x, y);
 	}
 
-	private double getDistance(byte x, byte y, ByteRectangle obstacle) {
-		BytePoint corner = obstacle.getLowerLeftCorner();
-		double dx = 0.;
-		if (!(x >= corner.getX() && x <= corner.getX() + obstacle.getWidth())) {
-			// X coordinate lies outside [corner.x; corner.x + width]
-			// p either lies right or left of the rectangle
-			dx = Math.min(Math.abs(x - corner.getX()),
-					Math.abs(x - (corner.getX() + obstacle.getWidth())));
-		}
-		double dy = 0.;
-		if (!(y >= corner.getY() && y <= corner.getY() + obstacle.getHeight())) {
-			// Y coordinate lies outside [corner.y; corner.y + height]
-			// p ether lies above or below the rectangle
-			dy = Math.min(Math.abs(y - corner.getY()),
-					Math.abs(y - (corner.getY() + obstacle.getHeight())));
+	/**
+	 * Smallest distance to a polygon, if it is smaller than min
+	 */
+	private double distanceToPolygon(double x, double y, double min) {
+		for (Polygon polygon : polygons) {
+			if (polygon.boundsDistance(x, y) < min) {
+				min = Math.min(min, polygon.distance(x, y));
+			}
 		}
-		// Euclidean distance
-		return Math.sqrt(dx * dx + dy * dy);
+		return min;
 	}
 
 	private double distanceToWall(byte x, byte y) {
@@ -180,6 +431,63 @@ public class Surrounding {
 				Math.abs(y), Math.abs(y - map.getHeight()));
 	}
 
+	/**
+	 * Hash of everything that determines a path on this surrounding:
+	 * dimensions, obstacles, start, goal and initial heading. Unlike hashCode
+	 * this is the same in every run of the program, so it can be used as key
+	 * for files (see PathCache.java).
+	 * 
+	 * @return
+	 */
+	public int contentHash() {
+		// FNV-1a
+		int hash = 0x811C9DC5;
+		hash = hash(hash, map.getWidth());
+		hash = hash(hash, map.getHeight());
+		for (ByteRectangle obstacle : obstacles) {
+			hash = hash(hash, obstacle.getA());
+			hash = hash(hash, obstacle.getB());
+		}
+		for (Polygon polygon : polygons) {
+			for (int i = 0; i < polygon.getCornerCount(); i++) {
+				DoublePoint corner = polygon.getCorner(i);
+				hash = hash(hash, Double.doubleToLongBits(corner.getX()));
+				hash = hash(hash, Double.doubleToLongBits(corner.getY()));
+			}
+		}
+		hash = hash(hash, start);
+		hash = hash(hash, goal);
+		hash = hash(hash, initialHeading == null ? 0 : Double
+				.doubleToLongBits(initialHeading.get(AngleType.DEGREE)));
+		return hash;
+	}
+
+	private static int hash(int hash, long bits) {
+		for (int shift = 0; shift < 64; shift += 8) {
+			hash = hash(hash, (int) (bits >>> shift));
+		}
+		return hash;
+	}
+
+	private static int hash(int hash, BytePoint p) {
+		if (p == null) {
+			return hash(hash(hash, 0xFF), 0xFF);
+		}
+		return hash(hash(hash, p.getX()), p.getY());
+	}
+
+	private static int hash(int hash, int b) {
+		return (hash ^ (b & 0xFF)) * 0x01000193;
+	}
+
+	public byte getWidth() {
+		return map.getWidth();
+	}
+
+	public byte getHeight() {
+		return map.getHeight();
+	}
+
 	public BytePoint getStart() {
 		return start;
 	}
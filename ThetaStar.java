@@ -0,0 +1,217 @@
+import java.util.List;
+
+/**
+ * Any-angle path planning with Lazy Theta* (Nash, Koenig, Tovey). Like A* on
+ * the 8-connected grid, but every cell may have any earlier cell as parent as
+ * long as there is a line of sight between them. The result therefore is not a
+ * staircase of single cells, but only the few corners of a path of long
+ * straight segments, which does not need to be reduced by DouglasPeucker.java
+ * anymore.
+ *
+ * "Lazy" means that the line of sight is only checked when a cell is expanded
+ * and not for every neighbor, which saves most of the checks.
+ *
+ * @author Johannes
+ *
+ */
+public final class ThetaStar {
+
+	/**
+	 * Runs Lazy Theta* on the clearance map of the surrounding for the given
+	 * minDistance.
+	 *
+	 * @param surrounding
+	 * @param minDistance
+	 * @return Corners of the path (including start and goal) or null, if no
+	 *         path found
+	 */
+	public static List<BytePoint> compute(Surrounding surrounding,
+			int minDistance) {
+		ClearanceMap clearance = surrounding.getClearanceMap(minDistance);
+		BytePoint start = surrounding.getStart();
+		BytePoint goal = surrounding.getGoal();
+		int[] path = compute(clearance, start.getX(), start.getY(),
+				goal.getX(), goal.getY(), new SearchWorkspace(
+						clearance.getWidth() * clearance.getHeight()));
+		return path == null ? null : WideAStar.toBytePoints(clearance, path);
+	}
+
+	/**
+	 * Runs Lazy Theta* with euclidean distances as costs and heuristics
+	 * function. Every segment of the result only crosses passable cells. On a
+	 * ClearanceMap every segment also costs the penalties of the cells it
+	 * enters, like the single moves of AStar.java.
+	 *
+	 * @param grid
+	 * @param startX
+	 * @param startY
+	 * @param goalX
+	 * @param goalY
+	 * @param workspace
+	 *            Must fit the grid
+	 * @return Cell indices (x * height + y) of the corners of the path or
+	 *         null, if no path found
+	 */
+	public static int[] compute(PassableGrid grid, int startX, int startY,
+			int goalX, int goalY, SearchWorkspace workspace) {
+		if (!workspace.fits(grid)) {
+			throw new IllegalArgumentException("workspace too small for grid");
+		}
+		int height = grid.getHeight();
+		ClearanceMap penalties = WideAStar.penalties(grid);
+		workspace.reset();
+		IndexedHeap openSet = workspace.getOpenSet();
+
+		int startCell = startX * height + startY;
+		int goalCell = goalX * height + goalY;
+		workspace.reach(startCell, 0, SearchWorkspace.NO_CELL);
+		openSet.add(startCell, WideAStar.heuristic(startX, startY, goalX, goalY));
+
+		while (!openSet.isEmpty()) {
+			int current = openSet.removeMinimum();
+			int currentX = current / height;
+			int currentY = current % height;
+			int parent = workspace.getCameFrom(current);
+			if (parent != SearchWorkspace.NO_CELL
+					&& !isLineOfSight(grid, parent / height, parent % height,
+							currentX, currentY)) {
+				// The lazy assumption was wrong, take the best closed neighbor
+				// as parent instead
+				setBestClosedNeighbor(grid, penalties, workspace, currentX,
+						currentY);
+			}
+			if (current == goalCell) {
+				return workspace.reconstructPath(goalCell);
+			}
+			workspace.close(current);
+
+			// The parent of the start is the start itself
+			int source = workspace.getCameFrom(current) == SearchWorkspace.NO_CELL ? current
+					: workspace.getCameFrom(current);
+			int sourceX = source / height;
+			int sourceY = source % height;
+			float sourceGScore = workspace.getGScore(source);
+			for (int neighborX = currentX - 1; neighborX <= currentX + 1; neighborX++) {
+				for (int neighborY = currentY - 1; neighborY <= currentY + 1; neighborY++) {
+					if (neighborX == currentX && neighborY == currentY
+							|| !grid.isPassable(neighborX, neighborY)) {
+						continue;
+					}
+					int neighbor = neighborX * height + neighborY;
+					if (workspace.isClosed(neighbor)) {
+						continue;
+					}
+					// Assume there is a line of sight from the source, this is
+					// checked when the neighbor is expanded
+					float tentativeGScore = sourceGScore
+							+ (float) WideAStar.heuristic(sourceX, sourceY,
+									neighborX, neighborY);
+					if (penalties != null) {
+						tentativeGScore += walkLine(grid, penalties, sourceX,
+								sourceY, neighborX, neighborY);
+					}
+					if (tentativeGScore < workspace.getGScore(neighbor)) {
+						workspace.reach(neighbor, tentativeGScore, source);
+						openSet.add(neighbor, tentativeGScore
+								+ WideAStar.heuristic(neighborX, neighborY,
+										goalX, goalY));
+					}
+				}
+			}
+		}
+		// No more positions in openSet, no path found
+		return null;
+	}
+
+	/**
+	 * Checks if the straight line between the centers of both cells only
+	 * crosses passable cells. If the line runs exactly through the corner of
+	 * cells, the cells on both sides are only touched and not checked. This
+	 * is the same as for diagonal moves in AStar.java.
+	 *
+	 * @param grid
+	 * @param x0
+	 * @param y0
+	 * @param x1
+	 * @param y1
+	 * @return
+	 */
+	public static boolean isLineOfSight(PassableGrid grid, int x0, int y0,
+			int x1, int y1) {
+		return walkLine(grid, null, x0, y0, x1, y1) >= 0;
+	}
+
+	/**
+	 * Walks the cells of the line between the centers of both cells like
+	 * isLineOfSight and sums up their penalties (see ClearanceMap.getPenalty),
+	 * without the first cell.
+	 *
+	 * @return -1 if there is no line of sight
+	 */
+	private static int walkLine(PassableGrid grid, ClearanceMap penalties,
+			int x0, int y0, int x1, int y1) {
+		int dx = Math.abs(x1 - x0);
+		int dy = Math.abs(y1 - y0);
+		int stepX = x1 > x0 ? 1 : -1;
+		int stepY = y1 > y0 ? 1 : -1;
+		int x = x0;
+		int y = y0;
+		// Distinguishes whether the line leaves the current cell through a
+		// vertical side (> 0), a horizontal side (< 0) or a corner (0)
+		int error = dx - dy;
+		dx *= 2;
+		dy *= 2;
+		int penalty = 0;
+		while (x != x1 || y != y1) {
+			if (error > 0) {
+				x += stepX;
+				error -= dy;
+			} else if (error < 0) {
+				y += stepY;
+				error += dx;
+			} else {
+				x += stepX;
+				y += stepY;
+				error += dx - dy;
+			}
+			if (!grid.isPassable(x, y)) {
+				return -1;
+			}
+			penalty += WideAStar.penalty(penalties, x, y);
+		}
+		return penalty;
+	}
+
+	/**
+	 * Sets the parent of (x,y) to the closed neighbor that results in the
+	 * smallest g score. Lazy Theta* guarantees that there is such a neighbor.
+	 */
+	private static void setBestClosedNeighbor(PassableGrid grid,
+			ClearanceMap penalties, SearchWorkspace workspace, int x, int y) {
+		int height = grid.getHeight();
+		float best = Float.POSITIVE_INFINITY;
+		int bestNeighbor = SearchWorkspace.NO_CELL;
+		for (int neighborX = x - 1; neighborX <= x + 1; neighborX++) {
+			for (int neighborY = y - 1; neighborY <= y + 1; neighborY++) {
+				if (neighborX < 0 || neighborY < 0
+						|| neighborX >= grid.getWidth() || neighborY >= height
+						|| neighborX == x && neighborY == y) {
+					continue;
+				}
+				int neighbor = neighborX * height + neighborY;
+				if (!workspace.isClosed(neighbor)) {
+					continue;
+				}
+				float gScore = workspace.getGScore(neighbor)
+						+ (neighborX != x && neighborY != y ? (float) Math
+								.sqrt(2) : 1);
+				if (gScore < best) {
+					best = gScore;
+					bestNeighbor = neighbor;
+				}
+			}
+		}
+		workspace.reach(x * height + y,
+				best + WideAStar.penalty(penalties, x, y), bestNeighbor);
+	}
+}
@@ -0,0 +1,480 @@
+/**
+ * Occupancy map with int coordinates for maps that are too big for
+ * Surrounding.java (byte coordinates, at most 5000 cells). The map is split
+ * into tiles of TILE_SIZE x TILE_SIZE cells, each packed into the bits of a
+ * few longs. Tiles that are completely free or completely occupied all share
+ * the same two arrays, so big empty rooms or walls cost one reference per
+ * tile. A shared tile is only copied when one of its cells is changed (copy on
+ * write).
+ *
+ * The map is a PassableGrid, so WideAStar.java, HierarchicalPlanner.java and
+ * ThetaStar.java plan on it directly. Use inflate to keep a distance to
+ * obstacles like ClearanceMap.java does for the compact map.
+ *
+ * distanceToNonPassableArea and castRay answer the same queries as
+ * Surrounding.java on the tiles. UltrasonicSensor.java and ParticleFilter.java
+ * are not wired to them yet and still need a Surrounding, so localization on
+ * a TiledMap has to call these queries itself.
+ *
+ * @author Johannes
+ *
+ */
+public class TiledMap implements PassableGrid {
+
+	/**
+	 * Width and height of a tile
+	 */
+	static final int TILE_SIZE = 16;
+	static final int TILE_SHIFT = 4;
+	static final int TILE_WORDS = TILE_SIZE * TILE_SIZE / 64;
+
+	/**
+	 * Shared tile without obstacles. Never written.
+	 */
+	static final long[] FREE = new long[TILE_WORDS];
+
+	/**
+	 * Shared tile that is completely occupied. Never written.
+	 */
+	static final long[] FULL = { -1L, -1L, -1L, -1L };
+
+	/**
+	 * Bits of every word of a tile that belong to cells at the edge of the
+	 * tile
+	 */
+	static final long[] EDGE_MASKS = edgeMasks();
+
+	int width;
+	int height;
+	int tilesX;
+	int tilesY;
+
+	/**
+	 * Tile (tx,ty) at tx * tilesY + ty. Cell (lx,ly) of a tile is bit
+	 * lx * TILE_SIZE + ly.
+	 */
+	long[][] tiles;
+
+	/**
+	 * Creates a map without obstacles.
+	 *
+	 * @param width
+	 * @param height
+	 */
+	public TiledMap(int width, int height) {
+		if (width < 0 || height < 0) {
+			throw new IllegalArgumentException("negative size");
+		}
+		this.width = width;
+		this.height = height;
+		this.tilesX = (width + TILE_SIZE - 1) >> TILE_SHIFT;
+		this.tilesY = (height + TILE_SIZE - 1) >> TILE_SHIFT;
+		this.tiles = new long[tilesX * tilesY][];
+		for (int i = 0; i < tiles.length; i++) {
+			tiles[i] = FREE;
+		}
+	}
+
+	/**
+	 * Copy constructor. Shared tiles stay shared, all others are copied.
+	 *
+	 * @param other
+	 */
+	public TiledMap(TiledMap other) {
+		this(other.width, other.height);
+		for (int i = 0; i < tiles.length; i++) {
+			tiles[i] = isShared(other.tiles[i]) ? other.tiles[i]
+					: copy(other.tiles[i]);
+		}
+	}
+
+	/**
+	 * Converts the map of a surrounding (true where obstacles are).
+	 *
+	 * @param map
+	 */
+	public TiledMap(BooleanMap map) {
+		this(map.getWidth(), map.getHeight());
+		for (int i = map.nextSetIndex(0); i >= 0; i = map.nextSetIndex(i + 1)) {
+			set(i / height, i % height, true);
+		}
+		compact();
+	}
+
+	public boolean isValid(int x, int y) {
+		return !(x < 0 || y < 0 || x >= width || y >= height);
+	}
+
+	/**
+	 * Checks if there is an obstacle at (x,y)
+	 *
+	 * @param x
+	 *            Must be valid
+	 * @param y
+	 *            Must be valid
+	 * @return
+	 */
+	public boolean get(int x, int y) {
+		long[] tile = tiles[(x >> TILE_SHIFT) * tilesY + (y >> TILE_SHIFT)];
+		int bit = bit(x, y);
+		return (tile[bit >> 6] & 1L << bit) != 0;
+	}
+
+	/**
+	 * Sets or clears an obstacle at (x,y). Invalid cells are ignored.
+	 *
+	 * @param x
+	 * @param y
+	 * @param b
+	 */
+	public void set(int x, int y, boolean b) {
+		if (!isValid(x, y) || get(x, y) == b) {
+			return;
+		}
+		int index = (x >> TILE_SHIFT) * tilesY + (y >> TILE_SHIFT);
+		long[] tile = tiles[index];
+		if (isShared(tile)) {
+			tile = copy(tile);
+			tiles[index] = tile;
+		}
+		int bit = bit(x, y);
+		tile[bit >> 6] ^= 1L << bit;
+	}
+
+	/**
+	 * Sets all cells of the rectangle (clipped to the map). Tiles that are
+	 * covered completely are replaced by a shared tile.
+	 *
+	 * @param xMin
+	 * @param yMin
+	 * @param xMax
+	 *            Inclusive
+	 * @param yMax
+	 *            Inclusive
+	 * @param b
+	 */
+	public void fill(int xMin, int yMin, int xMax, int yMax, boolean b) {
+		xMin = Math.max(xMin, 0);
+		yMin = Math.max(yMin, 0);
+		xMax = Math.min(xMax, width - 1);
+		yMax = Math.min(yMax, height - 1);
+		if (xMin > xMax || yMin > yMax) {
+			return;
+		}
+		for (int tx = xMin >> TILE_SHIFT; tx <= xMax >> TILE_SHIFT; tx++) {
+			int tileXMin = tx << TILE_SHIFT;
+			int tileXMax = tileXMin + TILE_SIZE - 1;
+			for (int ty = yMin >> TILE_SHIFT; ty <= yMax >> TILE_SHIFT; ty++) {
+				int tileYMin = ty << TILE_SHIFT;
+				int tileYMax = tileYMin + TILE_SIZE - 1;
+				if (xMin <= tileXMin && xMax >= tileXMax && yMin <= tileYMin
+						&& yMax >= tileYMax) {
+					tiles[tx * tilesY + ty] = b ? FULL : FREE;
+					continue;
+				}
+				for (int x = Math.max(xMin, tileXMin); x <= Math.min(xMax,
+						tileXMax); x++) {
+					for (int y = Math.max(yMin, tileYMin); y <= Math.min(yMax,
+							tileYMax); y++) {
+						set(x, y, b);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds an obstacle like Surrounding.addObstacle, but with int
+	 * coordinates.
+	 *
+	 * @param xMin
+	 * @param yMin
+	 * @param xMax
+	 *            Inclusive
+	 * @param yMax
+	 *            Inclusive
+	 */
+	public void addObstacle(int xMin, int yMin, int xMax, int yMax) {
+		fill(xMin, yMin, xMax, yMax, true);
+	}
+
+	/**
+	 * Checks if the robot may pass the given cell.
+	 *
+	 * @param x
+	 * @param y
+	 * @return false if (x,y) is outside the map or an obstacle
+	 */
+	@Override
+	public boolean isPassable(int x, int y) {
+		return isValid(x, y) && !get(x, y);
+	}
+
+	/**
+	 * Gets the distance to the closest non passable area (wall or obstacle),
+	 * like Surrounding.distanceToNonPassableArea: walls are at 0, width and
+	 * height, obstacles are the corners of their cells. Tiles are searched in
+	 * rings around the tile of (x,y), free tiles are skipped and only the
+	 * occupied cells of the other tiles are visited.
+	 *
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public double distanceToNonPassableArea(int x, int y) {
+		double min = Algebra.min(Math.abs(x), Math.abs(x - width),
+				Math.abs(y), Math.abs(y - height));
+		int centerX = Math.min(Math.max(x >> TILE_SHIFT, 0), tilesX - 1);
+		int centerY = Math.min(Math.max(y >> TILE_SHIFT, 0), tilesY - 1);
+		int maxRing = Math.max(Math.max(centerX, tilesX - 1 - centerX),
+				Math.max(centerY, tilesY - 1 - centerY));
+		for (int ring = 0; ring <= maxRing; ring++) {
+			// Every cell in ring r is more than (r - 1) * TILE_SIZE away
+			if (min <= (ring - 1) * TILE_SIZE) {
+				break;
+			}
+			for (int tx = centerX - ring; tx <= centerX + ring; tx++) {
+				if (tx < 0 || tx >= tilesX) {
+					continue;
+				}
+				// Inner columns only have the top and bottom tile in the ring
+				int step = tx == centerX - ring || tx == centerX + ring ? 1
+						: 2 * ring;
+				for (int ty = centerY - ring; ty <= centerY + ring; ty += step) {
+					if (ty >= 0 && ty < tilesY) {
+						min = distanceToTile(tx, ty, x, y, min);
+					}
+				}
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * Follows the ray from (x,y) in direction (dx,dy) through the cells of
+	 * the map until it enters a cell that is an obstacle or outside the map,
+	 * the same as Surrounding.castRay.
+	 *
+	 * @param x
+	 * @param y
+	 * @param dx
+	 *            Direction, normalized
+	 * @param dy
+	 *            Direction, normalized
+	 * @param start
+	 *            Distance along the ray where the search starts
+	 * @param maxDistance
+	 * @return Distance along the ray to the first cell that is not passable,
+	 *         at most maxDistance
+	 */
+	public double castRay(double x, double y, double dx, double dy,
+			double start, double maxDistance) {
+		double startX = x + start * dx;
+		double startY = y + start * dy;
+		int cellX = (int) Math.floor(startX);
+		int cellY = (int) Math.floor(startY);
+		int stepX = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+		int stepY = dy > 0 ? 1 : dy < 0 ? -1 : 0;
+		double deltaX = stepX == 0 ? Double.POSITIVE_INFINITY
+				: 1 / Math.abs(dx);
+		double deltaY = stepY == 0 ? Double.POSITIVE_INFINITY
+				: 1 / Math.abs(dy);
+		double nextX = stepX == 0 ? Double.POSITIVE_INFINITY : start
+				+ ((stepX > 0 ? cellX + 1 : cellX) - startX) / dx;
+		double nextY = stepY == 0 ? Double.POSITIVE_INFINITY : start
+				+ ((stepY > 0 ? cellY + 1 : cellY) - startY) / dy;
+		double t = start;
+		while (t < maxDistance) {
+			if (!isPassable(cellX, cellY)) {
+				return t;
+			}
+			if (nextX < nextY) {
+				t = nextX;
+				nextX += deltaX;
+				cellX += stepX;
+			} else {
+				t = nextY;
+				nextY += deltaY;
+				cellY += stepY;
+			}
+		}
+		return maxDistance;
+	}
+
+	/**
+	 * Creates a map in which all cells are occupied, that are not farther
+	 * away from any obstacle or wall than radius. This is the same as the
+	 * blocked cells of ClearanceMap.java, with the distance to the walls as in
+	 * Surrounding.java.
+	 *
+	 * As the union of the disks around all cells of an obstacle equals the
+	 * obstacle plus the disks around its border cells, only border cells are
+	 * inflated and completely occupied tiles are only visited at their edges.
+	 *
+	 * @param radius
+	 * @return
+	 */
+	public TiledMap inflate(int radius) {
+		TiledMap result = new TiledMap(this);
+		for (int tx = 0; tx < tilesX; tx++) {
+			for (int ty = 0; ty < tilesY; ty++) {
+				long[] tile = tiles[tx * tilesY + ty];
+				if (tile == FREE) {
+					continue;
+				}
+				for (int word = 0; word < TILE_WORDS; word++) {
+					long bits = tile[word];
+					if (tile == FULL) {
+						// Only the cells at the edges of the tile
+						bits &= EDGE_MASKS[word];
+					}
+					while (bits != 0) {
+						int bit = (word << 6) + Long.numberOfTrailingZeros(bits);
+						bits &= bits - 1;
+						int x = (tx << TILE_SHIFT) + (bit >> TILE_SHIFT);
+						int y = (ty << TILE_SHIFT) + (bit & TILE_SIZE - 1);
+						if (isValid(x, y) && isBorder(x, y)) {
+							result.fillDisk(x, y, radius);
+						}
+					}
+				}
+			}
+		}
+		// Walls: cells with min(x, width - x, y, height - y) <= radius
+		result.fill(0, 0, radius, height - 1, true);
+		result.fill(width - radius, 0, width - 1, height - 1, true);
+		result.fill(0, 0, width - 1, radius, true);
+		result.fill(0, height - radius, width - 1, height - 1, true);
+		result.compact();
+		return result;
+	}
+
+	/**
+	 * Replaces tiles that became uniform by the shared tiles.
+	 */
+	public void compact() {
+		for (int i = 0; i < tiles.length; i++) {
+			long[] tile = tiles[i];
+			if (isShared(tile)) {
+				continue;
+			}
+			long and = -1L;
+			long or = 0;
+			for (int word = 0; word < TILE_WORDS; word++) {
+				and &= tile[word];
+				or |= tile[word];
+			}
+			if (or == 0) {
+				tiles[i] = FREE;
+			} else if (and == -1L) {
+				tiles[i] = FULL;
+			}
+		}
+	}
+
+	/**
+	 * Number of tiles that are not shared, which is what the map costs in
+	 * addition to one reference per tile.
+	 *
+	 * @return
+	 */
+	public int getAllocatedTileCount() {
+		int count = 0;
+		for (int i = 0; i < tiles.length; i++) {
+			if (!isShared(tiles[i])) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public int getTileCount() {
+		return tiles.length;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Occupies all cells with euclidean distance to (x,y) of at most radius
+	 */
+	private void fillDisk(int x, int y, int radius) {
+		for (int dx = -radius; dx <= radius; dx++) {
+			int span = (int) Math.sqrt(radius * radius - dx * dx);
+			fill(x + dx, y - span, x + dx, y + span, true);
+		}
+	}
+
+	/**
+	 * Smallest distance from (x,y) to an occupied cell of tile (tx,ty), if it
+	 * is smaller than min
+	 */
+	private double distanceToTile(int tx, int ty, int x, int y, double min) {
+		long[] tile = tiles[tx * tilesY + ty];
+		if (tile == FREE) {
+			return min;
+		}
+		int tileX = tx << TILE_SHIFT;
+		int tileY = ty << TILE_SHIFT;
+		if (tile == FULL) {
+			// Cells beyond the map are never set, so FULL tiles are inside
+			int cx = Math.min(Math.max(x, tileX), tileX + TILE_SIZE - 1);
+			int cy = Math.min(Math.max(y, tileY), tileY + TILE_SIZE - 1);
+			return Math.min(min, Math.hypot(x - cx, y - cy));
+		}
+		for (int word = 0; word < TILE_WORDS; word++) {
+			long bits = tile[word];
+			while (bits != 0) {
+				int bit = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				int cx = tileX + (bit >> TILE_SHIFT);
+				int cy = tileY + (bit & TILE_SIZE - 1);
+				min = Math.min(min, Math.hypot(x - cx, y - cy));
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * Checks if an occupied cell has a free 4-neighbor inside the map
+	 */
+	private boolean isBorder(int x, int y) {
+		return isValid(x - 1, y) && !get(x - 1, y) || isValid(x + 1, y)
+				&& !get(x + 1, y) || isValid(x, y - 1) && !get(x, y - 1)
+				|| isValid(x, y + 1) && !get(x, y + 1);
+	}
+
+	private static long[] edgeMasks() {
+		long[] masks = new long[TILE_WORDS];
+		for (int index = 0; index < TILE_SIZE * TILE_SIZE; index++) {
+			int lx = index >> TILE_SHIFT;
+			int ly = index & TILE_SIZE - 1;
+			if (lx == 0 || ly == 0 || lx == TILE_SIZE - 1
+					|| ly == TILE_SIZE - 1) {
+				masks[index >> 6] |= 1L << index;
+			}
+		}
+		return masks;
+	}
+
+	private static int bit(int x, int y) {
+		return (x & TILE_SIZE - 1) << TILE_SHIFT | y & TILE_SIZE - 1;
+	}
+
+	private static boolean isShared(long[] tile) {
+		return tile == FREE || tile == FULL;
+	}
+
+	private static long[] copy(long[] tile) {
+		long[] result = new long[TILE_WORDS];
+		System.arraycopy(tile, 0, result, 0, TILE_WORDS);
+		return result;
+	}
+}
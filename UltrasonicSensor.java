@@ -16,6 +16,11 @@ public class UltrasonicSensor {
 
 	private Surrounding surrounding;
 
+	/**
+	 * Precomputed measures, null to always cast rays
+	 */
+	private RangeTable rangeTable;
+
 	public UltrasonicSensor(Surrounding surrounding) {
 		this.surrounding = surrounding;
 	}
@@ -28,6 +33,9 @@ public class UltrasonicSensor {
 	 * @return
 	 */
 	public int measureFront(Car referenceCar) {
+		if (rangeTable != null && rangeTable.contains(referenceCar)) {
+			return rangeTable.measureFront(referenceCar);
+		}
 		List<DoubleLine> sensorLines = RobotKnowledge
 				.getFrontSensorLines(referenceCar);
 		return sense(sensorLines, referenceCar);
@@ -41,14 +49,16 @@ public class UltrasonicSensor {
 	 * @return
 	 */
 	public int measureBack(Car referenceCar) {
+		if (rangeTable != null && rangeTable.contains(referenceCar)) {
+			return rangeTable.measureBack(referenceCar);
+		}
 		List<DoubleLine> sensorLines = RobotKnowledge
 				.getBackSensorLines(referenceCar);
 		return sense(sensorLines, referenceCar);
 	}
 
 	/**
-	 * Sends out rays by further and further offsetting points until they hit
-	 * something.
+	 * Sends out rays until they hit something (see castRay).
 	 * 
 	 * @param sensorLines
 	 * @return
@@ -62,35 +72,7 @@ public class UltrasonicSensor {
 				(byte) referenceCarPosition.getX(),
 				(byte) referenceCarPosition.getY());
 		for (DoubleLine sensorLine : sensorLines) {
-			// Get offset values
-			double dx = sensorLine.getP2().getX() - sensorLine.getP1().getX();
-			double dy = sensorLine.getP2().getY() - sensorLine.getP1().getY();
-			// The ratio of dx and dy is preserved, but either dx or dy (the
-			// greater one) is normalized to 1 or -1
-			if (Math.abs(dx) > Math.abs(dy)) {
-				dy = dy / Math.abs(dx);
-				dx = dx > 0 ? 1. : -1.;
-			} else {
-				dx = dx / Math.abs(dy);
-				dy = dy > 0 ? 1. : -1.;
-			}
-
-			// Point that is send out and further and further ofsetted by dx and
-			// dy
-			DoublePoint current = new DoublePoint(sensorLine.getP2());
-			// Start with minDistance
-			double oneStepDistance = Math.sqrt(dx * dx + dy * dy);
-			current.setX(current.getX() + (minDistance / oneStepDistance) * dx);
-			current.setY(current.getY() + (minDistance / oneStepDistance) * dy);
-			do {
-				current.setX(current.getX() + dx);
-				current.setY(current.getY() + dy);
-			} while (surrounding.isIn(current.toPoint())
-					&& Geometry.euclideanDist(sensorLine.getP2(), current) < RobotKnowledge
-							.getMaxMeasure());
-
-			double distance = Geometry.euclideanDist(sensorLine.getP2(),
-					current);
+			double distance = castRay(sensorLine, minDistance);
 			if (distance >= RobotKnowledge.getMaxMeasure()) {
 				distance = NOTHING_RECOGNIZED_MEASURE;
 			}
@@ -103,4 +85,124 @@ public class UltrasonicSensor {
 		return RobotKnowledge.getMeasureFront(min);
 	}
 
+	/**
+	 * Follows the ray from P2 of the sensor line in the direction from P1 to
+	 * P2 until it hits a wall or an obstacle, as set by
+	 * Constants.RAY_CAST_MODE.
+	 * 
+	 * @param sensorLine
+	 * @param minDistance
+	 *            Distance to the closest wall or obstacle, the ray starts
+	 *            there
+	 * @return Distance from P2 to the first wall or obstacle, at least
+	 *         RobotKnowledge.getMaxMeasure() if nothing was hit
+	 */
+	double castRay(DoubleLine sensorLine, double minDistance) {
+		DoublePoint origin = sensorLine.getP2();
+		return castRay(origin.getX(), origin.getY(), origin.getX()
+				- sensorLine.getP1().getX(), origin.getY()
+				- sensorLine.getP1().getY(), minDistance);
+	}
+
+	/**
+	 * Follows the ray from (originX,originY) in direction (dx,dy) until it
+	 * hits a wall or an obstacle, as set by Constants.RAY_CAST_MODE.
+	 * 
+	 * @param originX
+	 * @param originY
+	 * @param dx
+	 *            Direction, any length
+	 * @param dy
+	 *            Direction, any length
+	 * @param minDistance
+	 *            Distance to the closest wall or obstacle, the ray starts
+	 *            there
+	 * @return Distance from the origin to the first wall or obstacle, at
+	 *         least RobotKnowledge.getMaxMeasure() if nothing was hit
+	 */
+	double castRay(double originX, double originY, double dx, double dy,
+			double minDistance) {
+		double length = Math.sqrt(dx * dx + dy * dy);
+		double distance;
+		switch (Constants.RAY_CAST_MODE) {
+		case DDA:
+			distance = surrounding.castRay(originX, originY, dx / length, dy
+					/ length, minDistance, RobotKnowledge.getMaxMeasure());
+			break;
+		case SPHERE_TRACING:
+			distance = surrounding.sphereTrace(originX, originY, dx / length,
+					dy / length, minDistance, RobotKnowledge.getMaxMeasure());
+			break;
+		case ANALYTIC:
+			distance = surrounding.distanceAlongRay(originX, originY, dx
+					/ length, dy / length, RobotKnowledge.getMaxMeasure());
+			break;
+		case PYRAMID:
+			distance = surrounding.getOccupancyPyramid().castRay(originX,
+					originY, dx / length, dy / length, minDistance,
+					RobotKnowledge.getMaxMeasure());
+			break;
+		case STEP:
+		default:
+			distance = step(new DoublePoint(originX, originY), dx, dy,
+					minDistance);
+			break;
+		}
+		// The cells of polygons are only an approximation of their edges
+		return Math.min(distance, surrounding.distanceToPolygonAlongRay(
+				originX, originY, dx / length, dy / length));
+	}
+
+	/**
+	 * Sends out a ray by further and further offsetting a point until it hits
+	 * something (RayCastMode.STEP).
+	 */
+	private double step(DoublePoint origin, double dx, double dy,
+			double minDistance) {
+		// The ratio of dx and dy is preserved, but either dx or dy (the
+		// greater one) is normalized to 1 or -1
+		if (Math.abs(dx) > Math.abs(dy)) {
+			dy = dy / Math.abs(dx);
+			dx = dx > 0 ? 1. : -1.;
+		} else {
+			dx = dx / Math.abs(dy);
+			dy = dy > 0 ? 1. : -1.;
+		}
+
+		// Point that is send out and further and further ofsetted by dx and
+		// dy
+		DoublePoint current = new DoublePoint(origin);
+		// Start with minDistance
+		double oneStepDistance = Math.sqrt(dx * dx + dy * dy);
+		current.setX(current.getX() + (minDistance / oneStepDistance) * dx);
+		current.setY(current.getY() + (minDistance / oneStepDistance) * dy);
+		do {
+			current.setX(current.getX() + dx);
+			current.setY(current.getY() + dy);
+		} while (surrounding.isIn(current.toPoint())
+				&& Geometry.euclideanDist(origin, current) < RobotKnowledge
+						.getMaxMeasure());
+
+		return Geometry.euclideanDist(origin, current);
+	}
+
+	public Surrounding getSurrounding() {
+		return surrounding;
+	}
+
+	public RangeTable getRangeTable() {
+		return rangeTable;
+	}
+
+	/**
+	 * Answers measureFront and measureBack from the table for all poses
+	 * inside the map.
+	 * 
+	 * @param rangeTable
+	 *            null to always cast rays
+	 */
+	public void setRangeTable(RangeTable rangeTable) {
+		this.rangeTable = rangeTable;
+	}
+
 }
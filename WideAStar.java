@@ -0,0 +1,175 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A star graph search like AStar.java, but without its byte limits. Scores are
+ * floats and coordinates are int, so neither long and serpentine paths nor big
+ * maps overflow anything. All memory is kept in a SearchWorkspace, that can be
+ * reused for many searches.
+ * 
+ * @author Johannes
+ * 
+ */
+public final class WideAStar {
+
+	/**
+	 * Runs a star search on the clearance map of the surrounding for the
+	 * given minDistance. Like AStar.compute, but without overflows.
+	 * 
+	 * @param surrounding
+	 * @param minDistance
+	 * @return Path or null, if no path found
+	 */
+	public static List<BytePoint> compute(Surrounding surrounding,
+			int minDistance) {
+		ClearanceMap clearance = surrounding.getClearanceMap(minDistance);
+		BytePoint start = surrounding.getStart();
+		BytePoint goal = surrounding.getGoal();
+		int[] path = compute(clearance, start.getX(), start.getY(),
+				goal.getX(), goal.getY());
+		return path == null ? null : toBytePoints(clearance, path);
+	}
+
+	/**
+	 * Runs a star search with euclidean distance as heuristics function.
+	 * Straight moves have cost 1 and diagonal moves cost 2, as in AStar.java.
+	 * On a ClearanceMap the penalty of the entered cell is added, also as in
+	 * AStar.java. The start itself does not have to be passable.
+	 * 
+	 * @param grid
+	 * @param startX
+	 * @param startY
+	 * @param goalX
+	 * @param goalY
+	 * @return Cell indices (x * height + y) of the path or null, if no path
+	 *         found
+	 */
+	public static int[] compute(PassableGrid grid, int startX, int startY,
+			int goalX, int goalY) {
+		return compute(grid, startX, startY, goalX, goalY,
+				new SearchWorkspace(grid.getWidth() * grid.getHeight()));
+	}
+
+	/**
+	 * Same as compute(grid, startX, startY, goalX, goalY), but uses the given
+	 * workspace instead of allocating a new one.
+	 * 
+	 * @param grid
+	 * @param startX
+	 * @param startY
+	 * @param goalX
+	 * @param goalY
+	 * @param workspace
+	 *            Must fit the grid
+	 * @return Cell indices (x * height + y) of the path or null, if no path
+	 *         found
+	 */
+	public static int[] compute(PassableGrid grid, int startX, int startY,
+			int goalX, int goalY, SearchWorkspace workspace) {
+		if (!workspace.fits(grid)) {
+			throw new IllegalArgumentException("workspace too small for grid");
+		}
+		int height = grid.getHeight();
+		ClearanceMap penalties = penalties(grid);
+		workspace.reset();
+		IndexedHeap openSet = workspace.getOpenSet();
+
+		int startCell = startX * height + startY;
+		int goalCell = goalX * height + goalY;
+		workspace.reach(startCell, 0, SearchWorkspace.NO_CELL);
+		openSet.add(startCell,
+				heuristic(startX, startY, goalX, goalY));
+
+		while (!openSet.isEmpty()) {
+			int current = openSet.removeMinimum();
+			if (current == goalCell) {
+				return workspace.reconstructPath(goalCell);
+			}
+			workspace.close(current);
+
+			int currentX = current / height;
+			int currentY = current % height;
+			float currentGScore = workspace.getGScore(current);
+			for (int neighborX = currentX - 1; neighborX <= currentX + 1; neighborX++) {
+				for (int neighborY = currentY - 1; neighborY <= currentY + 1; neighborY++) {
+					if (neighborX == currentX && neighborY == currentY
+							|| !grid.isPassable(neighborX, neighborY)) {
+						continue;
+					}
+					int neighbor = neighborX * height + neighborY;
+					if (workspace.isClosed(neighbor)) {
+						continue;
+					}
+					// Diagonal moves have cost 2, cells close to walls might
+					// have an additional penalty
+					float tentativeGScore = currentGScore
+							+ (neighborX != currentX && neighborY != currentY ? 2
+									: 1) + penalty(penalties, neighborX, neighborY);
+					if (tentativeGScore < workspace.getGScore(neighbor)) {
+						workspace.reach(neighbor, tentativeGScore, current);
+						openSet.add(neighbor, tentativeGScore
+								+ heuristic(neighborX, neighborY, goalX, goalY));
+					}
+				}
+			}
+		}
+		// No more positions in openSet, no path found
+		return null;
+	}
+
+	/**
+	 * The grid as ClearanceMap, if it is one, for its penalties (see
+	 * ClearanceMap.getPenalty). Other grids have no penalties.
+	 * 
+	 * @param grid
+	 * @return null if the grid is no ClearanceMap
+	 */
+	static ClearanceMap penalties(PassableGrid grid) {
+		return grid instanceof ClearanceMap ? (ClearanceMap) grid : null;
+	}
+
+	/**
+	 * Additional cost of entering (x,y)
+	 * 
+	 * @param penalties
+	 *            See penalties, may be null
+	 * @param x
+	 * @param y
+	 * @return 0 if penalties is null
+	 */
+	static int penalty(ClearanceMap penalties, int x, int y) {
+		return penalties == null ? 0 : penalties.getPenalty((byte) x, (byte) y);
+	}
+
+	/**
+	 * Euclidean distance
+	 */
+	static double heuristic(int x, int y, int goalX, int goalY) {
+		int dx = x - goalX;
+		int dy = y - goalY;
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Converts cell indices into points. Only possible if the grid fits into
+	 * byte coordinates.
+	 * 
+	 * @param grid
+	 * @param path
+	 *            Cell indices (x * height + y)
+	 * @return
+	 */
+	public static List<BytePoint> toBytePoints(PassableGrid grid, int[] path) {
+		if (grid.getWidth() > Byte.MAX_VALUE + 1
+				|| grid.getHeight() > Byte.MAX_VALUE + 1) {
+			throw new IllegalArgumentException(
+					"Grid does not fit into byte coordinates");
+		}
+		List<BytePoint> result = new ArrayList<BytePoint>(path.length);
+		for (int cell : path) {
+			result.add(new BytePoint((byte) (cell / grid.getHeight()),
+					(byte) (cell % grid.getHeight())));
+		}
+		return result;
+	}
+}
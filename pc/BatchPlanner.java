@@ -0,0 +1,145 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Plans many start/goal queries on one surrounding at once, e.g. to evaluate
+ * arenas offline. The queries are split among the threads of a fork join pool
+ * and every thread uses its own SearchWorkspace, so the only thing shared is
+ * the (read only) clearance map.
+ * 
+ * This needs java.util.concurrent and therefore only runs on a PC, not on the
+ * NXT.
+ * 
+ * @author Johannes
+ * 
+ */
+public final class BatchPlanner {
+
+	/**
+	 * Queries are not split any further if there are less than this many.
+	 */
+	static final int SEQUENTIAL_THRESHOLD = 4;
+
+	/**
+	 * A single start/goal pair
+	 */
+	public static class Query {
+
+		BytePoint start;
+		BytePoint goal;
+
+		public Query(BytePoint start, BytePoint goal) {
+			this.start = start;
+			this.goal = goal;
+		}
+
+		public BytePoint getStart() {
+			return start;
+		}
+
+		public BytePoint getGoal() {
+			return goal;
+		}
+
+		@Override
+		public String toString() {
+			return "Query [start=" + start + ", goal=" + goal + "]";
+		}
+	}
+
+	/**
+	 * Plans all queries on the common fork join pool.
+	 * 
+	 * @param surrounding
+	 *            Must not be changed while planning
+	 * @param minDistance
+	 * @param queries
+	 * @return Paths (see WideAStar.java) in the same order as the queries,
+	 *         null where no path was found
+	 */
+	public static List<List<BytePoint>> compute(Surrounding surrounding,
+			int minDistance, List<Query> queries) {
+		return compute(surrounding, minDistance, queries,
+				ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Plans all queries on the given pool.
+	 * 
+	 * @param surrounding
+	 *            Must not be changed while planning
+	 * @param minDistance
+	 * @param queries
+	 * @param pool
+	 * @return Paths (see WideAStar.java) in the same order as the queries,
+	 *         null where no path was found
+	 */
+	public static List<List<BytePoint>> compute(Surrounding surrounding,
+			int minDistance, List<Query> queries, ForkJoinPool pool) {
+		// Built here, because Surrounding builds it lazily and is not thread
+		// safe. The clearance map itself is only read by the workers.
+		ClearanceMap clearance = surrounding.getClearanceMap(minDistance);
+		Query[] input = queries.toArray(new Query[queries.size()]);
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		List<BytePoint>[] results = new List[input.length];
+		ThreadLocal<SearchWorkspace> workspaces = new ThreadLocal<SearchWorkspace>();
+		pool.invoke(new PlanTask(clearance, input, results, workspaces, 0,
+				input.length));
+		return new ArrayList<List<BytePoint>>(Arrays.asList(results));
+	}
+
+	/**
+	 * Plans queries[from] to queries[to - 1], splitting in halves until there
+	 * are only few queries left.
+	 */
+	static class PlanTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		ClearanceMap clearance;
+		Query[] queries;
+		List<BytePoint>[] results;
+		ThreadLocal<SearchWorkspace> workspaces;
+		int from;
+		int to;
+
+		PlanTask(ClearanceMap clearance, Query[] queries,
+				List<BytePoint>[] results,
+				ThreadLocal<SearchWorkspace> workspaces, int from, int to) {
+			this.clearance = clearance;
+			this.queries = queries;
+			this.results = results;
+			this.workspaces = workspaces;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SEQUENTIAL_THRESHOLD) {
+				SearchWorkspace workspace = workspaces.get();
+				if (workspace == null) {
+					workspace = new SearchWorkspace(clearance.getWidth()
+							* clearance.getHeight());
+					workspaces.set(workspace);
+				}
+				for (int i = from; i < to; i++) {
+					BytePoint start = queries[i].getStart();
+					BytePoint goal = queries[i].getGoal();
+					int[] path = WideAStar.compute(clearance, start.getX(),
+							start.getY(), goal.getX(), goal.getY(), workspace);
+					results[i] = path == null ? null : WideAStar.toBytePoints(
+							clearance, path);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new PlanTask(clearance, queries, results, workspaces,
+						from, middle), new PlanTask(clearance, queries,
+						results, workspaces, middle, to));
+			}
+		}
+	}
+}
@@ -0,0 +1,561 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Imports maps from occupancy images (e.g. floorplans or maps saved by other
+ * robots), so obstacles do not have to be typed in as ByteRectangles. Dark
+ * pixels are obstacles. PGM images are read row by row and only one row of
+ * pixels and one row of cells are kept in memory, so they can be much bigger
+ * than the memory. PNG images are decoded as a whole by javax.imageio.
+ *
+ * Every cell that contains at least one dark pixel becomes an obstacle. The
+ * top row of the image is the biggest y of the map (images count rows from the
+ * top, the map counts y from the bottom). Obstacles are collected as runs of
+ * cells in the same row, which are optionally merged with equal runs in the
+ * rows below into bigger rectangles.
+ *
+ * Supports binary and ascii PGM and, with javax.imageio, PNG. This only runs
+ * on a PC, not on the NXT.
+ *
+ * @author Johannes
+ *
+ */
+public class ImageImporter {
+
+	/**
+	 * Pixels darker than this (0 - 255) are obstacles by default. Unknown
+	 * space in maps of ROS (205) is an obstacle as well.
+	 */
+	public static final int DEFAULT_THRESHOLD = 250;
+
+	/**
+	 * Size of one map unit in cm
+	 */
+	static final double UNIT_CM = 5.;
+
+	/**
+	 * Size of a pixel in cm
+	 */
+	double pixelSize;
+
+	/**
+	 * Size of a cell of the map (1 ^= 5cm)
+	 */
+	int cellSize;
+
+	/**
+	 * Pixels darker than this (0 - 255) are obstacles
+	 */
+	int threshold;
+
+	/**
+	 * Merge runs of the same cells in consecutive rows
+	 */
+	boolean mergeRows;
+
+	/**
+	 * Result of the last import
+	 */
+	TiledMap map;
+	int[] obstacles;
+	int obstacleCount;
+
+	/**
+	 * Runs of the previous row of cells that may still be merged: first and
+	 * last x and the biggest y
+	 */
+	int[] openXMin;
+	int[] openXMax;
+	int[] openYMax;
+	int openCount;
+
+	/**
+	 * Constructor
+	 *
+	 * @param pixelSize
+	 *            Size of a pixel in cm, at most the size of a cell (every
+	 *            pixel is added to a single cell, so bigger pixels would
+	 *            leave gaps in walls)
+	 * @param cellSize
+	 *            Size of a cell of the map (1 ^= 5cm)
+	 * @param threshold
+	 *            Pixels darker than this (0 - 255) are obstacles
+	 * @param mergeRows
+	 *            Merge runs of obstacle cells in consecutive rows into bigger
+	 *            rectangles (fewer obstacles)
+	 */
+	public ImageImporter(double pixelSize, int cellSize, int threshold,
+			boolean mergeRows) {
+		if (pixelSize <= 0 || cellSize <= 0) {
+			throw new IllegalArgumentException(
+					"pixelSize and cellSize must be positive");
+		}
+		if (pixelSize > cellSize * UNIT_CM) {
+			throw new IllegalArgumentException(
+					"pixelSize must not be bigger than a cell ("
+							+ cellSize * UNIT_CM + "cm)");
+		}
+		this.pixelSize = pixelSize;
+		this.cellSize = cellSize;
+		this.threshold = threshold;
+		this.mergeRows = mergeRows;
+	}
+
+	/**
+	 * Imports a PGM or PNG file (chosen by its first bytes) into a surrounding.
+	 * The map must fit into a surrounding.
+	 *
+	 * @param file
+	 * @param pixelSize
+	 *            Size of a pixel in cm, at most the size of a cell
+	 * @param cellSize
+	 *            Size of a cell of the map (1 ^= 5cm)
+	 * @return Surrounding without start, goal and heading
+	 * @throws IOException
+	 */
+	public static Surrounding importSurrounding(File file, double pixelSize,
+			int cellSize) throws IOException {
+		ImageImporter importer = new ImageImporter(pixelSize, cellSize,
+				DEFAULT_THRESHOLD, true);
+		importer.importFile(file);
+		return importer.toSurrounding();
+	}
+
+	/**
+	 * Imports a PGM or PNG file, chosen by its first bytes.
+	 *
+	 * @param file
+	 * @return Occupancy of the map, obstacles are in getObstacles()
+	 * @throws IOException
+	 */
+	public TiledMap importFile(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			in.mark(2);
+			boolean isPgm = in.read() == 'P';
+			in.reset();
+			if (isPgm) {
+				return importPgm(in);
+			}
+		} finally {
+			in.close();
+		}
+		return importPng(file);
+	}
+
+	/**
+	 * Imports a PGM image (P2 or P5).
+	 *
+	 * @param in
+	 *            Should be buffered, is not closed
+	 * @return Occupancy of the map, obstacles are in getObstacles()
+	 * @throws IOException
+	 */
+	public TiledMap importPgm(InputStream in) throws IOException {
+		if (in.read() != 'P') {
+			throw new IOException("no PGM image");
+		}
+		int type = in.read();
+		if (type != '2' && type != '5') {
+			throw new IOException("unsupported PGM type P" + (char) type);
+		}
+		int width = readHeaderNumber(in);
+		int height = readHeaderNumber(in);
+		int maxValue = readHeaderNumber(in);
+		if (maxValue <= 0 || maxValue > 65535) {
+			throw new IOException("invalid PGM max value " + maxValue);
+		}
+
+		begin(width, height);
+		boolean[] cells = new boolean[map.getWidth()];
+		int[] pixels = new int[width];
+		int currentY = cellY(0, height);
+		for (int row = 0; row < height; row++) {
+			int y = cellY(row, height);
+			if (y != currentY) {
+				endRow(cells, currentY);
+				currentY = y;
+			}
+			for (int column = 0; column < width; column++) {
+				int value = type == '2' ? readHeaderNumber(in) : readSample(in,
+						maxValue);
+				pixels[column] = value * 255 / maxValue;
+			}
+			addPixels(pixels, cells);
+		}
+		endRow(cells, currentY);
+		return end();
+	}
+
+	/**
+	 * Imports a PNG image. The image is decoded by a single read of the
+	 * ImageReader, which keeps the whole image in memory. Rows are added to
+	 * the map while they are decoded (see PngRows), interlaced images once
+	 * they are complete.
+	 *
+	 * @param file
+	 * @return Occupancy of the map, obstacles are in getObstacles()
+	 * @throws IOException
+	 */
+	public TiledMap importPng(File file) throws IOException {
+		ImageInputStream in = ImageIO.createImageInputStream(file);
+		if (in == null) {
+			throw new IOException("can not read " + file);
+		}
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			if (!readers.hasNext()) {
+				throw new IOException("unsupported image " + file);
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				begin(width, height);
+				PngRows rows = new PngRows(width, height);
+				reader.addIIOReadUpdateListener(rows);
+				BufferedImage image = reader.read(0);
+				// Rows that were not reported one by one
+				rows.add(image, height);
+				return end();
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Converts the last import into a surrounding.
+	 *
+	 * @return Surrounding without start, goal and heading
+	 * @throws IllegalArgumentException
+	 *             If the map is too big for a surrounding
+	 */
+	public Surrounding toSurrounding() {
+		if (map == null) {
+			throw new IllegalStateException("nothing imported");
+		}
+		if (map.getWidth() > Byte.MAX_VALUE || map.getHeight() > Byte.MAX_VALUE) {
+			throw new IllegalArgumentException(
+					"map too big for byte coordinates, use getMap()");
+		}
+		Surrounding surrounding = new Surrounding((byte) map.getWidth(),
+				(byte) map.getHeight());
+		for (int i = 0; i < 4 * obstacleCount; i += 4) {
+			surrounding.addObstacle(new ByteRectangle(new BytePoint(
+					(byte) obstacles[i], (byte) obstacles[i + 1]),
+					new BytePoint((byte) obstacles[i + 2],
+							(byte) obstacles[i + 3])));
+		}
+		return surrounding;
+	}
+
+	/**
+	 * Occupancy of the last import
+	 *
+	 * @return
+	 */
+	public TiledMap getMap() {
+		return map;
+	}
+
+	/**
+	 * Obstacles of the last import
+	 *
+	 * @return 4 ints per obstacle: x min, y min, x max, y max (inclusive), as
+	 *         MapFile.write takes them
+	 */
+	public int[] getObstacles() {
+		int[] result = new int[4 * obstacleCount];
+		System.arraycopy(obstacles, 0, result, 0, result.length);
+		return result;
+	}
+
+	public int getObstacleCount() {
+		return obstacleCount;
+	}
+
+	private void begin(int width, int height) {
+		map = new TiledMap(cellX(width - 1) + 1, cellY(0, height) + 1);
+		obstacles = new int[64];
+		obstacleCount = 0;
+		openXMin = new int[16];
+		openXMax = new int[16];
+		openYMax = new int[16];
+		openCount = 0;
+	}
+
+	/**
+	 * Marks the cells of all dark pixels of an image row
+	 */
+	private void addPixels(int[] pixels, boolean[] cells) {
+		for (int column = 0; column < pixels.length; column++) {
+			if (pixels[column] < threshold) {
+				cells[cellX(column)] = true;
+			}
+		}
+	}
+
+	/**
+	 * Turns a finished row of cells into runs, merges them with the open runs
+	 * of the row above and clears the row for the next one.
+	 */
+	private void endRow(boolean[] cells, int y) {
+		int[] previousXMin = openXMin;
+		int[] previousXMax = openXMax;
+		int[] previousYMax = openYMax;
+		int previousCount = openCount;
+		openXMin = new int[Math.max(16, previousCount)];
+		openXMax = new int[openXMin.length];
+		openYMax = new int[openXMin.length];
+		openCount = 0;
+
+		// Both the runs of this row and the open runs are ordered by x
+		int previous = 0;
+		int x = 0;
+		while (x < cells.length) {
+			if (!cells[x]) {
+				x++;
+				continue;
+			}
+			int xMin = x;
+			while (x < cells.length && cells[x]) {
+				map.set(x, y, true);
+				cells[x] = false;
+				x++;
+			}
+			int xMax = x - 1;
+			int yMax = y;
+			while (previous < previousCount && previousXMin[previous] < xMin) {
+				closeRun(previousXMin[previous], previousXMax[previous],
+						previousYMax[previous], y + 1);
+				previous++;
+			}
+			if (previous < previousCount && previousXMin[previous] == xMin
+					&& previousXMax[previous] == xMax) {
+				// Same run as in the row above, so the rectangle grows
+				yMax = previousYMax[previous];
+				previous++;
+			}
+			if (mergeRows) {
+				openRun(xMin, xMax, yMax);
+			} else {
+				addObstacle(xMin, y, xMax, y);
+			}
+		}
+		while (previous < previousCount) {
+			closeRun(previousXMin[previous], previousXMax[previous],
+					previousYMax[previous], y + 1);
+			previous++;
+		}
+	}
+
+	private TiledMap end() {
+		for (int i = 0; i < openCount; i++) {
+			closeRun(openXMin[i], openXMax[i], openYMax[i], 0);
+		}
+		openCount = 0;
+		map.compact();
+		return map;
+	}
+
+	private void openRun(int xMin, int xMax, int yMax) {
+		if (openCount == openXMin.length) {
+			openXMin = grow(openXMin);
+			openXMax = grow(openXMax);
+			openYMax = grow(openYMax);
+		}
+		openXMin[openCount] = xMin;
+		openXMax[openCount] = xMax;
+		openYMax[openCount] = yMax;
+		openCount++;
+	}
+
+	private void closeRun(int xMin, int xMax, int yMax, int yMin) {
+		addObstacle(xMin, yMin, xMax, yMax);
+	}
+
+	private void addObstacle(int xMin, int yMin, int xMax, int yMax) {
+		if (4 * obstacleCount == obstacles.length) {
+			obstacles = grow(obstacles);
+		}
+		obstacles[4 * obstacleCount] = xMin;
+		obstacles[4 * obstacleCount + 1] = yMin;
+		obstacles[4 * obstacleCount + 2] = xMax;
+		obstacles[4 * obstacleCount + 3] = yMax;
+		obstacleCount++;
+	}
+
+	/**
+	 * Cell x of an image column
+	 */
+	private int cellX(int column) {
+		return (int) (column * pixelSize / (cellSize * UNIT_CM));
+	}
+
+	/**
+	 * Cell y of an image row, rows are counted from the top
+	 */
+	private int cellY(int row, int height) {
+		return (int) ((height - 1 - row) * pixelSize / (cellSize * UNIT_CM));
+	}
+
+	/**
+	 * Next number of a PGM header (or of the pixels of a P2 image), skipping
+	 * white space and comments
+	 */
+	private static int readHeaderNumber(InputStream in) throws IOException {
+		int c = in.read();
+		while (c == '#' || Character.isWhitespace(c)) {
+			if (c == '#') {
+				while (c != '\n' && c != -1) {
+					c = in.read();
+				}
+			}
+			c = in.read();
+		}
+		if (c < '0' || c > '9') {
+			throw new IOException("invalid PGM number");
+		}
+		int value = 0;
+		while (c >= '0' && c <= '9') {
+			value = 10 * value + c - '0';
+			c = in.read();
+		}
+		return value;
+	}
+
+	/**
+	 * Pixel of a P5 image, two bytes (big endian) if maxValue is bigger than
+	 * 255
+	 */
+	private static int readSample(InputStream in, int maxValue)
+			throws IOException {
+		int value = in.read();
+		if (maxValue > 255) {
+			value = value << 8 | in.read();
+		}
+		if (value < 0) {
+			throw new EOFException("PGM image too short");
+		}
+		return value;
+	}
+
+	/**
+	 * Adds the rows of a PNG image to the map in the order they are decoded.
+	 * Only updates of whole consecutive rows are used; the rows of
+	 * interlaced passes are added after reading.
+	 */
+	private class PngRows implements IIOReadUpdateListener {
+
+		boolean[] cells;
+		int[] rgb;
+		int[] pixels;
+		int height;
+
+		/**
+		 * First row that was not added yet
+		 */
+		int nextRow;
+
+		/**
+		 * Row of cells of the last added row
+		 */
+		int currentY;
+
+		PngRows(int width, int height) {
+			this.cells = new boolean[map.getWidth()];
+			this.rgb = new int[width];
+			this.pixels = new int[width];
+			this.height = height;
+			this.currentY = cellY(0, height);
+		}
+
+		/**
+		 * Adds the rows from nextRow to endRow - 1. The last row of cells is
+		 * finished when the last row of the image is added.
+		 */
+		void add(BufferedImage image, int endRow) {
+			for (; nextRow < endRow; nextRow++) {
+				int y = cellY(nextRow, height);
+				if (y != currentY) {
+					endRow(cells, currentY);
+					currentY = y;
+				}
+				image.getRGB(0, nextRow, rgb.length, 1, rgb, 0, rgb.length);
+				for (int column = 0; column < rgb.length; column++) {
+					pixels[column] = gray(rgb[column]);
+				}
+				addPixels(pixels, cells);
+				if (nextRow == height - 1) {
+					endRow(cells, currentY);
+				}
+			}
+		}
+
+		@Override
+		public void imageUpdate(ImageReader source, BufferedImage theImage,
+				int minX, int minY, int width, int rows, int periodX,
+				int periodY, int[] bands) {
+			if (minX == 0 && width == rgb.length && periodX == 1
+					&& periodY == 1 && minY == nextRow) {
+				add(theImage, minY + rows);
+			}
+		}
+
+		@Override
+		public void passStarted(ImageReader source, BufferedImage theImage,
+				int pass, int minPass, int maxPass, int minX, int minY,
+				int periodX, int periodY, int[] bands) {
+		}
+
+		@Override
+		public void passComplete(ImageReader source, BufferedImage theImage) {
+		}
+
+		@Override
+		public void thumbnailPassStarted(ImageReader source,
+				BufferedImage theThumbnail, int pass, int minPass,
+				int maxPass, int minX, int minY, int periodX, int periodY,
+				int[] bands) {
+		}
+
+		@Override
+		public void thumbnailUpdate(ImageReader source,
+				BufferedImage theThumbnail, int minX, int minY, int width,
+				int height, int periodX, int periodY, int[] bands) {
+		}
+
+		@Override
+		public void thumbnailPassComplete(ImageReader source,
+				BufferedImage theThumbnail) {
+		}
+	}
+
+	private static int gray(int rgb) {
+		int r = rgb >> 16 & 0xFF;
+		int g = rgb >> 8 & 0xFF;
+		int b = rgb & 0xFF;
+		return (r * 299 + g * 587 + b * 114) / 1000;
+	}
+
+	private static int[] grow(int[] array) {
+		int[] result = new int[2 * array.length];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+}
@@ -0,0 +1,273 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Binary file format for (big) maps, so maps do not have to be hard coded like
+ * in Surrounding.initSurrounding. Files are opened with FileChannel.map (see
+ * MappedMap.java): nothing is read up front, the operating system pages in
+ * only the parts of the map that are used, and several processes opening the
+ * same file share the same pages.
+ *
+ * File format (big endian, sections aligned to 8 bytes):
+ * <ul>
+ * <li>Header (HEADER_SIZE bytes): int MAGIC, int width, int height, int start
+ * x, int start y, int goal x, int goal y, double initial heading in degrees,
+ * int distance scale, int number of obstacles, long offset of the occupancy
+ * bitmap, long offset of the distance field, long offset of the obstacles,
+ * int number of polygons, 4 unused bytes, long offset of the polygons</li>
+ * <li>Occupancy bitmap: one bit per cell, cell (x,y) is bit i % 64 of long i /
+ * 64 with i = x * height + y (the same as BooleanMap.java)</li>
+ * <li>Distance field: one short per cell (x * height + y), distance to the
+ * closest wall or obstacle times the distance scale, rounded up (the same as
+ * DistanceField.java)</li>
+ * <li>Obstacles: 4 ints per obstacle, x min, y min, x max, y max
+ * (inclusive)</li>
+ * <li>Polygons (see Polygon.java): per polygon int number of corners, 4
+ * unused bytes and a double x and a double y per corner</li>
+ * </ul>
+ *
+ * This needs java.nio and therefore only runs on a PC, not on the NXT.
+ *
+ * @author Johannes
+ *
+ */
+public final class MapFile {
+
+	/**
+	 * Identifies map files (and their version)
+	 */
+	static final int MAGIC = 0x4D415032;
+
+	static final int HEADER_SIZE = 88;
+
+	static final int OFFSET_WIDTH = 4;
+	static final int OFFSET_HEIGHT = 8;
+	static final int OFFSET_START = 12;
+	static final int OFFSET_GOAL = 20;
+	static final int OFFSET_HEADING = 28;
+	static final int OFFSET_SCALE = 36;
+	static final int OFFSET_OBSTACLE_COUNT = 40;
+	static final int OFFSET_OCCUPANCY = 48;
+	static final int OFFSET_DISTANCES = 56;
+	static final int OFFSET_OBSTACLES = 64;
+	static final int OFFSET_POLYGON_COUNT = 72;
+	static final int OFFSET_POLYGONS = 80;
+
+	/**
+	 * Writes the map of a surrounding.
+	 *
+	 * @param file
+	 * @param surrounding
+	 * @throws IOException
+	 */
+	public static void write(File file, Surrounding surrounding)
+			throws IOException {
+		int[] obstacles = new int[4 * surrounding.obstacles.size()];
+		int i = 0;
+		for (ByteRectangle obstacle : surrounding.obstacles) {
+			BytePoint lowLeft = obstacle.getLowerLeftCorner();
+			BytePoint upRight = obstacle.getUpperRightCorner();
+			obstacles[i++] = lowLeft.getX();
+			obstacles[i++] = lowLeft.getY();
+			obstacles[i++] = upRight.getX();
+			obstacles[i++] = upRight.getY();
+		}
+		BytePoint start = surrounding.getStart();
+		BytePoint goal = surrounding.getGoal();
+		Angle heading = surrounding.getInitialHeading();
+		write(file, new TiledMap(surrounding.toBooleanMap()), obstacles,
+				surrounding.polygons, start.getX(), start.getY(), goal.getX(),
+				goal.getY(), heading == null ? 0 : heading.get(AngleType.DEGREE));
+	}
+
+	/**
+	 * Writes a map. The distance field is calculated from the occupancy.
+	 *
+	 * @param file
+	 * @param map
+	 *            Occupancy
+	 * @param obstacles
+	 *            4 ints per obstacle: x min, y min, x max, y max (inclusive)
+	 * @param startX
+	 * @param startY
+	 * @param goalX
+	 * @param goalY
+	 * @param headingDeg
+	 *            Initial heading in degrees
+	 * @throws IOException
+	 */
+	public static void write(File file, TiledMap map, int[] obstacles,
+			int startX, int startY, int goalX, int goalY, double headingDeg)
+			throws IOException {
+		write(file, map, obstacles, new LinkedList<Polygon>(), startX, startY,
+				goalX, goalY, headingDeg);
+	}
+
+	/**
+	 * Writes a map with polygon obstacles. The distance field is calculated
+	 * from the occupancy, which has to contain the cells of the polygons.
+	 *
+	 * @param file
+	 * @param map
+	 *            Occupancy
+	 * @param obstacles
+	 *            4 ints per obstacle: x min, y min, x max, y max (inclusive)
+	 * @param polygons
+	 * @param startX
+	 * @param startY
+	 * @param goalX
+	 * @param goalY
+	 * @param headingDeg
+	 *            Initial heading in degrees
+	 * @throws IOException
+	 */
+	public static void write(File file, TiledMap map, int[] obstacles,
+			List<Polygon> polygons, int startX, int startY, int goalX,
+			int goalY, double headingDeg) throws IOException {
+		if (obstacles.length % 4 != 0) {
+			throw new IllegalArgumentException(
+					"obstacles must have 4 ints per obstacle");
+		}
+		int width = map.getWidth();
+		int height = map.getHeight();
+		long cells = (long) width * height;
+		long occupancy = HEADER_SIZE;
+		long distances = occupancy + 8 * ((cells + 63) / 64);
+		long obstacleOffset = align(distances + 2 * cells);
+		long polygonOffset = align(obstacleOffset + 4L * obstacles.length);
+		long size = polygonOffset;
+		for (Polygon polygon : polygons) {
+			size += 8 + 16L * polygon.getCornerCount();
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("map too big for one mapping");
+		}
+		int scale = scale(width, height);
+
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.setLength(size);
+			MappedByteBuffer buffer = out.getChannel().map(MapMode.READ_WRITE,
+					0, size);
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(OFFSET_WIDTH, width);
+			buffer.putInt(OFFSET_HEIGHT, height);
+			buffer.putInt(OFFSET_START, startX);
+			buffer.putInt(OFFSET_START + 4, startY);
+			buffer.putInt(OFFSET_GOAL, goalX);
+			buffer.putInt(OFFSET_GOAL + 4, goalY);
+			buffer.putDouble(OFFSET_HEADING, headingDeg);
+			buffer.putInt(OFFSET_SCALE, scale);
+			buffer.putInt(OFFSET_OBSTACLE_COUNT, obstacles.length / 4);
+			buffer.putLong(OFFSET_OCCUPANCY, occupancy);
+			buffer.putLong(OFFSET_DISTANCES, distances);
+			buffer.putLong(OFFSET_OBSTACLES, obstacleOffset);
+			buffer.putInt(OFFSET_POLYGON_COUNT, polygons.size());
+			buffer.putLong(OFFSET_POLYGONS, polygonOffset);
+
+			for (long word = 0; word < (cells + 63) / 64; word++) {
+				long bits = 0;
+				for (int bit = 0; bit < 64 && word * 64 + bit < cells; bit++) {
+					long index = word * 64 + bit;
+					if (map.get((int) (index / height), (int) (index % height))) {
+						bits |= 1L << bit;
+					}
+				}
+				buffer.putLong((int) (occupancy + 8 * word), bits);
+			}
+			writeDistances(buffer, (int) distances, map, scale);
+			for (int i = 0; i < obstacles.length; i++) {
+				buffer.putInt((int) obstacleOffset + 4 * i, obstacles[i]);
+			}
+			int offset = (int) polygonOffset;
+			for (Polygon polygon : polygons) {
+				buffer.putInt(offset, polygon.getCornerCount());
+				offset += 8;
+				for (int i = 0; i < polygon.getCornerCount(); i++) {
+					buffer.putDouble(offset, polygon.xs[i]);
+					buffer.putDouble(offset + 8, polygon.ys[i]);
+					offset += 16;
+				}
+			}
+			buffer.force();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Opens a map file read only.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 *             If the file can not be read or is no map file
+	 */
+	public static MappedMap open(File file) throws IOException {
+		return new MappedMap(file);
+	}
+
+	/**
+	 * Distance field like DistanceField.java, but for int coordinates. The
+	 * squared column distances are kept in an int array, the final distances
+	 * are written straight into the file.
+	 */
+	private static void writeDistances(MappedByteBuffer buffer, int offset,
+			TiledMap map, int scale) {
+		int width = map.getWidth();
+		int height = map.getHeight();
+		int length = Math.max(width, height);
+		double[] f = new double[length];
+		double[] d = new double[length];
+		int[] v = new int[length];
+		double[] z = new double[length + 1];
+		int[] columns = new int[width * height];
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				f[y] = map.get(x, y) ? 0 : DistanceField.INFINITY;
+			}
+			DistanceField.transform(f, height, d, v, z);
+			for (int y = 0; y < height; y++) {
+				columns[x * height + y] = d[y] >= Integer.MAX_VALUE ? Integer.MAX_VALUE
+						: (int) d[y];
+			}
+		}
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int column = columns[x * height + y];
+				f[x] = column == Integer.MAX_VALUE ? DistanceField.INFINITY
+						: column;
+			}
+			DistanceField.transform(f, width, d, v, z);
+			for (int x = 0; x < width; x++) {
+				double distance = Math.min(Math.sqrt(d[x]), Math.min(
+						Math.min(x, width - x), Math.min(y, height - y)));
+				buffer.putShort(offset + 2 * (x * height + y),
+						(short) Math.ceil(distance * scale));
+			}
+		}
+	}
+
+	/**
+	 * Biggest scale (at most DistanceField.SCALE) for which the biggest
+	 * possible distance still fits into a short. The distance to the walls
+	 * is never bigger than half the width or height.
+	 */
+	private static int scale(int width, int height) {
+		int maxDistance = Math.max(1, Math.min(width, height) / 2 + 1);
+		int scale = DistanceField.SCALE;
+		while (scale > 1 && maxDistance * scale > Short.MAX_VALUE) {
+			scale /= 2;
+		}
+		return scale;
+	}
+
+	private static long align(long offset) {
+		return (offset + 7) & ~7L;
+	}
+}
@@ -0,0 +1,264 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Read only view of a map file (see MapFile.java). Every query reads straight
+ * from the mapped file, so opening a map costs nothing but the header, no
+ * matter how big the map is.
+ *
+ * This needs java.nio and therefore only runs on a PC, not on the NXT.
+ *
+ * @author Johannes
+ *
+ */
+public class MappedMap implements PassableGrid, Closeable {
+
+	RandomAccessFile file;
+	MappedByteBuffer buffer;
+
+	int width;
+	int height;
+	int scale;
+	int obstacleCount;
+	int occupancy;
+	int distances;
+	int obstacles;
+	int polygonCount;
+	int polygons;
+
+	/**
+	 * Maps the file read only. Use MapFile.open.
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	MappedMap(File path) throws IOException {
+		file = new RandomAccessFile(path, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() < MapFile.HEADER_SIZE
+					|| channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("no map file: " + path);
+			}
+			buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt(0) != MapFile.MAGIC) {
+				throw new IOException("no map file: " + path);
+			}
+			width = buffer.getInt(MapFile.OFFSET_WIDTH);
+			height = buffer.getInt(MapFile.OFFSET_HEIGHT);
+			scale = buffer.getInt(MapFile.OFFSET_SCALE);
+			obstacleCount = buffer.getInt(MapFile.OFFSET_OBSTACLE_COUNT);
+			occupancy = (int) buffer.getLong(MapFile.OFFSET_OCCUPANCY);
+			distances = (int) buffer.getLong(MapFile.OFFSET_DISTANCES);
+			obstacles = (int) buffer.getLong(MapFile.OFFSET_OBSTACLES);
+			polygonCount = buffer.getInt(MapFile.OFFSET_POLYGON_COUNT);
+			polygons = (int) buffer.getLong(MapFile.OFFSET_POLYGONS);
+			if (obstacles + 16L * obstacleCount > channel.size()
+					|| polygons + 8L * polygonCount > channel.size()) {
+				throw new IOException("truncated map file: " + path);
+			}
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes the file. The mapping stays valid until it is garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	public boolean isValid(int x, int y) {
+		return !(x < 0 || y < 0 || x >= width || y >= height);
+	}
+
+	/**
+	 * Checks if there is an obstacle at (x,y)
+	 *
+	 * @param x
+	 *            Must be valid
+	 * @param y
+	 *            Must be valid
+	 * @return
+	 */
+	public boolean isOccupied(int x, int y) {
+		long index = (long) x * height + y;
+		long word = buffer.getLong(occupancy + 8 * (int) (index >> 6));
+		return (word & 1L << index) != 0;
+	}
+
+	/**
+	 * Checks if the robot may pass the given cell (ignoring its size, see
+	 * withClearance).
+	 */
+	@Override
+	public boolean isPassable(int x, int y) {
+		return isValid(x, y) && !isOccupied(x, y);
+	}
+
+	/**
+	 * Distance of (x,y) to the closest wall or obstacle.
+	 *
+	 * @param x
+	 *            Must be valid
+	 * @param y
+	 *            Must be valid
+	 * @return Rounded up to 1 / scale
+	 */
+	public double distanceToNonPassableArea(int x, int y) {
+		return (double) buffer.getShort(distances + 2 * (x * height + y))
+				/ scale;
+	}
+
+	/**
+	 * View of the map in which only cells farther away than minDistance from
+	 * any wall or obstacle are passable, like ClearanceMap.java. This is read
+	 * from the distance field, so nothing is calculated.
+	 *
+	 * @param minDistance
+	 * @return
+	 */
+	public PassableGrid withClearance(final int minDistance) {
+		return new PassableGrid() {
+
+			@Override
+			public int getWidth() {
+				return width;
+			}
+
+			@Override
+			public int getHeight() {
+				return height;
+			}
+
+			@Override
+			public boolean isPassable(int x, int y) {
+				return isValid(x, y)
+						&& distanceToNonPassableArea(x, y) > minDistance;
+			}
+		};
+	}
+
+	/**
+	 * Converts the map into a surrounding, e.g. to replace
+	 * Surrounding.initSurrounding.
+	 *
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             If the map is too big for a surrounding
+	 */
+	public Surrounding toSurrounding() {
+		if (width > Byte.MAX_VALUE || height > Byte.MAX_VALUE) {
+			throw new IllegalArgumentException(
+					"map too big for byte coordinates");
+		}
+		Surrounding surrounding = new Surrounding((byte) width, (byte) height);
+		for (int i = 0; i < obstacleCount; i++) {
+			int offset = obstacles + 16 * i;
+			surrounding.addObstacle(new ByteRectangle(new BytePoint(
+					(byte) buffer.getInt(offset),
+					(byte) buffer.getInt(offset + 4)), new BytePoint(
+					(byte) buffer.getInt(offset + 8),
+					(byte) buffer.getInt(offset + 12))));
+		}
+		for (int i = 0, offset = polygons; i < polygonCount; i++) {
+			Polygon polygon = readPolygon(offset);
+			surrounding.addObstacle(polygon);
+			offset += 8 + 16 * polygon.getCornerCount();
+		}
+		surrounding.setStart(new BytePoint((byte) getStartX(),
+				(byte) getStartY()));
+		surrounding.setGoal(new BytePoint((byte) getGoalX(), (byte) getGoalY()));
+		surrounding.setInitialHeading(getInitialHeading());
+		return surrounding;
+	}
+
+	/**
+	 * Returns an obstacle.
+	 *
+	 * @param i
+	 *            Between 0 and getObstacleCount() - 1
+	 * @return x min, y min, x max, y max (inclusive)
+	 */
+	public int[] getObstacle(int i) {
+		int offset = obstacles + 16 * i;
+		return new int[] { buffer.getInt(offset), buffer.getInt(offset + 4),
+				buffer.getInt(offset + 8), buffer.getInt(offset + 12) };
+	}
+
+	public int getObstacleCount() {
+		return obstacleCount;
+	}
+
+	/**
+	 * Returns a polygon obstacle. The polygons have different sizes, so this
+	 * reads all polygons before i.
+	 *
+	 * @param i
+	 *            Between 0 and getPolygonCount() - 1
+	 * @return
+	 */
+	public Polygon getPolygon(int i) {
+		if (i < 0 || i >= polygonCount) {
+			throw new IllegalArgumentException("No polygon " + i);
+		}
+		int offset = polygons;
+		for (int j = 0; j < i; j++) {
+			offset += 8 + 16 * buffer.getInt(offset);
+		}
+		return readPolygon(offset);
+	}
+
+	public int getPolygonCount() {
+		return polygonCount;
+	}
+
+	public int getStartX() {
+		return buffer.getInt(MapFile.OFFSET_START);
+	}
+
+	public int getStartY() {
+		return buffer.getInt(MapFile.OFFSET_START + 4);
+	}
+
+	public int getGoalX() {
+		return buffer.getInt(MapFile.OFFSET_GOAL);
+	}
+
+	public int getGoalY() {
+		return buffer.getInt(MapFile.OFFSET_GOAL + 4);
+	}
+
+	public Angle getInitialHeading() {
+		return Angle.newDeg(buffer.getDouble(MapFile.OFFSET_HEADING));
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	private Polygon readPolygon(int offset) {
+		int corners = buffer.getInt(offset);
+		double[] xs = new double[corners];
+		double[] ys = new double[corners];
+		for (int i = 0; i < corners; i++) {
+			xs[i] = buffer.getDouble(offset + 8 + 16 * i);
+			ys[i] = buffer.getDouble(offset + 16 + 16 * i);
+		}
+		return new Polygon(xs, ys);
+	}
+}
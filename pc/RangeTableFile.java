@@ -0,0 +1,154 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary cache of a RangeTable.java, so the table is only built once per map,
+ * sensor model and heading resolution.
+ *
+ * File format (big endian): int MAGIC, int key of the map and the sensor
+ * model (see key), int width, int height, int heading bins,
+ * then width * height * heading bins bytes of the front sensor and as many
+ * bytes of the back sensor (index (x * height + y) * heading bins + bin).
+ *
+ * This only runs on a PC, the table is too big for the NXT.
+ *
+ * @author Johannes
+ *
+ */
+public final class RangeTableFile {
+
+	/**
+	 * Identifies range table files (and their version)
+	 */
+	static final int MAGIC = 0x524E4732;
+
+	static final int HEADER_SIZE = 20;
+
+	private RangeTableFile() {
+	}
+
+	/**
+	 * Computes the key of the table that would be built for the surrounding
+	 * with the current sensor model: the map (see Surrounding.contentHash),
+	 * the ray cast mode, the maximum measure and the mount points and rays of
+	 * both sensors (see RobotKnowledge.java).
+	 *
+	 * @param surrounding
+	 * @return
+	 */
+	public static int key(Surrounding surrounding) {
+		int key = surrounding.contentHash();
+		key = 31 * key + Constants.RAY_CAST_MODE.ordinal();
+		key = 31 * key + hash(RobotKnowledge.getMaxMeasure());
+		key = 31 * key + hash(RobotKnowledge.FRONT_SENSOR_MOUNT_OFFSET.getX());
+		key = 31 * key + hash(RobotKnowledge.FRONT_SENSOR_MOUNT_OFFSET.getY());
+		key = 31 * key + RobotKnowledge.FRONT_SENSOR_SECTOR_DEGREES;
+		key = 31 * key + RobotKnowledge.FRONT_SENSOR_SECTOR_RESOLUTION;
+		key = 31 * key + hash(RobotKnowledge.BACK_SENSOR_MOUNT_OFFSET.getX());
+		key = 31 * key + hash(RobotKnowledge.BACK_SENSOR_MOUNT_OFFSET.getY());
+		key = 31 * key + RobotKnowledge.BACK_SENSOR_SECTOR_DEGREES;
+		key = 31 * key + RobotKnowledge.BACK_SENSOR_SECTOR_RESOLUTION;
+		return key;
+	}
+
+	/**
+	 * Reads the table of the surrounding from the file. If the file does not
+	 * exist or belongs to another map, sensor model or heading resolution,
+	 * the table is built and written to the file.
+	 *
+	 * @param file
+	 * @param surrounding
+	 * @param headingBins
+	 * @return
+	 * @throws IOException
+	 */
+	public static RangeTable load(File file, Surrounding surrounding,
+			int headingBins) throws IOException {
+		int key = key(surrounding);
+		if (file.exists()) {
+			RangeTable table = read(file, key);
+			if (table != null && table.getHeadingBins() == headingBins) {
+				return table;
+			}
+		}
+		RangeTable table = new RangeTable(surrounding, headingBins);
+		write(file, table, key);
+		return table;
+	}
+
+	/**
+	 * Writes a table.
+	 *
+	 * @param file
+	 * @param table
+	 * @param key
+	 *            Key of the map and sensor model of the table (see key)
+	 * @throws IOException
+	 */
+	public static void write(File file, RangeTable table, int key)
+			throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(key);
+			out.writeInt(table.width);
+			out.writeInt(table.height);
+			out.writeInt(table.headingBins);
+			out.write(table.front);
+			out.write(table.back);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a table.
+	 *
+	 * @param file
+	 * @param key
+	 *            Key of the expected map and sensor model (see key)
+	 * @return null if the file is no range table or belongs to another map or
+	 *         sensor model
+	 * @throws IOException
+	 */
+	public static RangeTable read(File file, int key)
+			throws IOException {
+		if (file.length() < HEADER_SIZE) {
+			return null;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != key) {
+				return null;
+			}
+			int width = in.readInt();
+			int height = in.readInt();
+			int headingBins = in.readInt();
+			long size = (long) width * height * headingBins;
+			if (width <= 0 || height <= 0 || headingBins <= 0
+					|| size > Integer.MAX_VALUE) {
+				throw new IOException("Invalid range table size");
+			}
+			byte[] front = new byte[(int) size];
+			byte[] back = new byte[(int) size];
+			in.readFully(front);
+			in.readFully(back);
+			return new RangeTable(width, height, headingBins, front, back);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static int hash(double value) {
+		long bits = Double.doubleToLongBits(value);
+		return (int) (bits ^ bits >>> 32);
+	}
+}
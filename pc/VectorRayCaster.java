@@ -0,0 +1,223 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * BatchRayCaster.java that traces the rays of several poses at once with the
+ * SIMD instructions of the CPU (JDK Vector API). Every lane of a vector
+ * follows the ray of one pose through the cells of the map, the same way as
+ * Surrounding.castRay (RayCastMode.DDA); lanes that hit something are masked
+ * out until all lanes of the vector are done. For other ray cast modes the
+ * rays are cast one by one like in BatchRayCaster.java.
+ *
+ * Whether this is faster than BatchRayCaster.java depends on the JDK and the
+ * CPU, as not every JDK compiles the gathers and masks of the incubator API
+ * to SIMD instructions. Measure before using it.
+ *
+ * The occupancy of the map is copied when the caster is created, so create a
+ * new one after adding obstacles.
+ *
+ * This needs the module jdk.incubator.vector (Java 16 or newer, compile and
+ * run with --add-modules jdk.incubator.vector) and therefore only runs on a
+ * PC, not on the NXT.
+ *
+ * @author Johannes
+ *
+ */
+public class VectorRayCaster extends BatchRayCaster {
+
+	static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	/**
+	 * Ints with as many lanes as SPECIES, to gather the occupancy
+	 */
+	static final VectorSpecies<Integer> INDEX_SPECIES = VectorSpecies.of(
+			int.class, VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+
+	/**
+	 * 1 where obstacles are, with a border of one cell around the map that is
+	 * occupied too, so rays never leave the array. Cell (x,y) is at (x + 1) *
+	 * (height + 2) + y + 1.
+	 */
+	double[] occupancy;
+	int paddedHeight;
+
+	/**
+	 * Per pose: state of the traversal (see Surrounding.castRay)
+	 */
+	double[] cellX;
+	double[] cellY;
+	double[] stepX;
+	double[] stepY;
+	double[] deltaX;
+	double[] deltaY;
+	double[] nextX;
+	double[] nextY;
+	double[] t;
+
+	/**
+	 * Lanes that are done before the first step
+	 */
+	boolean[] done;
+
+	int[] indices;
+
+	public VectorRayCaster(UltrasonicSensor sensor) {
+		super(sensor);
+		BooleanMap map = surrounding.toBooleanMap();
+		int width = map.getWidth();
+		int height = map.getHeight();
+		paddedHeight = height + 2;
+		occupancy = new double[(width + 2) * paddedHeight];
+		for (int x = -1; x <= width; x++) {
+			for (int y = -1; y <= height; y++) {
+				if (x < 0 || y < 0 || x == width || y == height
+						|| map.get((byte) x, (byte) y)) {
+					occupancy[(x + 1) * paddedHeight + y + 1] = 1;
+				}
+			}
+		}
+		indices = new int[INDEX_SPECIES.length()];
+	}
+
+	@Override
+	protected void traceRays(int count) {
+		if (Constants.RAY_CAST_MODE != RayCastMode.DDA) {
+			super.traceRays(count);
+			return;
+		}
+		double max = RobotKnowledge.getMaxMeasure();
+		prepare(count, max);
+		int lanes = SPECIES.length();
+		int i = 0;
+		for (; i <= count - lanes; i += lanes) {
+			trace(i, max);
+		}
+		// The rest is traced one by one
+		for (; i < count; i++) {
+			distances[i] = sensor.castRay(originX[i], originY[i],
+					directionX[i], directionY[i], start[i]);
+		}
+		if (!surrounding.polygons.isEmpty()) {
+			// The same as UltrasonicSensor.castRay
+			for (i = 0; i < count - count % lanes; i++) {
+				double length = Math.sqrt(directionX[i] * directionX[i]
+						+ directionY[i] * directionY[i]);
+				distances[i] = Math.min(distances[i], surrounding
+						.distanceToPolygonAlongRay(originX[i], originY[i],
+								directionX[i] / length, directionY[i] / length));
+			}
+		}
+	}
+
+	@Override
+	protected void ensureCapacity(int count) {
+		super.ensureCapacity(count);
+		if (cellX != null && cellX.length >= count) {
+			return;
+		}
+		cellX = new double[originX.length];
+		cellY = new double[originX.length];
+		stepX = new double[originX.length];
+		stepY = new double[originX.length];
+		deltaX = new double[originX.length];
+		deltaY = new double[originX.length];
+		nextX = new double[originX.length];
+		nextY = new double[originX.length];
+		t = new double[originX.length];
+		done = new boolean[originX.length];
+	}
+
+	/**
+	 * Sets up the traversal of every pose like Surrounding.castRay. Lanes that
+	 * start outside the map or beyond max are done right away.
+	 */
+	private void prepare(int count, double max) {
+		int width = occupancy.length / paddedHeight - 2;
+		int height = paddedHeight - 2;
+		for (int i = 0; i < count; i++) {
+			double length = Math.sqrt(directionX[i] * directionX[i]
+					+ directionY[i] * directionY[i]);
+			double dx = directionX[i] / length;
+			double dy = directionY[i] / length;
+			double startX = originX[i] + start[i] * dx;
+			double startY = originY[i] + start[i] * dy;
+			int x = (int) Math.floor(startX);
+			int y = (int) Math.floor(startY);
+			int sx = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+			int sy = dy > 0 ? 1 : dy < 0 ? -1 : 0;
+			cellX[i] = x;
+			cellY[i] = y;
+			stepX[i] = sx;
+			stepY[i] = sy;
+			deltaX[i] = sx == 0 ? Double.POSITIVE_INFINITY : 1 / Math.abs(dx);
+			deltaY[i] = sy == 0 ? Double.POSITIVE_INFINITY : 1 / Math.abs(dy);
+			nextX[i] = sx == 0 ? Double.POSITIVE_INFINITY : start[i]
+					+ ((sx > 0 ? x + 1 : x) - startX) / dx;
+			nextY[i] = sy == 0 ? Double.POSITIVE_INFINITY : start[i]
+					+ ((sy > 0 ? y + 1 : y) - startY) / dy;
+			t[i] = start[i];
+			done[i] = true;
+			if (t[i] >= max) {
+				distances[i] = max;
+			} else if (x < 0 || y < 0 || x >= width || y >= height) {
+				distances[i] = t[i];
+			} else {
+				done[i] = false;
+			}
+		}
+	}
+
+	/**
+	 * Traces the rays of the poses offset to offset + SPECIES.length() - 1
+	 */
+	private void trace(int offset, double max) {
+		DoubleVector x = DoubleVector.fromArray(SPECIES, cellX, offset);
+		DoubleVector y = DoubleVector.fromArray(SPECIES, cellY, offset);
+		DoubleVector sx = DoubleVector.fromArray(SPECIES, stepX, offset);
+		DoubleVector sy = DoubleVector.fromArray(SPECIES, stepY, offset);
+		DoubleVector dx = DoubleVector.fromArray(SPECIES, deltaX, offset);
+		DoubleVector dy = DoubleVector.fromArray(SPECIES, deltaY, offset);
+		DoubleVector nx = DoubleVector.fromArray(SPECIES, nextX, offset);
+		DoubleVector ny = DoubleVector.fromArray(SPECIES, nextY, offset);
+		DoubleVector distance = DoubleVector.fromArray(SPECIES, t, offset);
+		DoubleVector result = DoubleVector.fromArray(SPECIES, distances,
+				offset);
+		VectorMask<Double> finished = VectorMask.fromArray(SPECIES, done,
+				offset);
+		while (!finished.allTrue()) {
+			VectorMask<Double> active = finished.not();
+			// Finished lanes read the border cell at index 0
+			DoubleVector index = x.add(1).mul(paddedHeight).add(y).add(1)
+					.blend(0, finished);
+			((IntVector) index.convertShape(VectorOperators.D2I,
+					INDEX_SPECIES, 0)).intoArray(indices, 0);
+			DoubleVector occupied = DoubleVector.fromArray(SPECIES,
+					occupancy, 0, indices, 0);
+			VectorMask<Double> hit = occupied.compare(VectorOperators.GT, 0)
+					.and(active);
+			result = result.blend(distance, hit);
+			finished = finished.or(hit);
+			active = finished.not();
+
+			// Step to the next cell in x or in y
+			VectorMask<Double> inX = nx.compare(VectorOperators.LT, ny).and(
+					active);
+			VectorMask<Double> inY = inX.not().and(active);
+			distance = distance.blend(nx, inX).blend(ny, inY);
+			nx = nx.add(dx, inX);
+			x = x.add(sx, inX);
+			ny = ny.add(dy, inY);
+			y = y.add(sy, inY);
+
+			VectorMask<Double> beyond = distance.compare(VectorOperators.GE,
+					max).and(active);
+			result = result.blend(max, beyond);
+			finished = finished.or(beyond);
+		}
+		result.intoArray(distances, offset);
+	}
+}